@@ -0,0 +1,128 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import java.util.List;
+
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * Finds how large a roundabout can be without running into what is
+ * around the junction.
+ * <p>
+ * Only the area the roundabout could cover is looked at, through the bounding box
+ * search of the data set, so the cost does not grow with the size of the layer.
+ * Features are ways tagged building, highway, railway, waterway or barrier
+ * that do not go through the junction, and tagged nodes. Tagged nodes on the
+ * ways through the junction, like give_way or crossing nodes, are cut off or
+ * moved with the arm, so they do not count, unless they are another mini
+ * roundabout. Another mini roundabout only gets half the distance, leaving
+ * room for its own ring.
+ *
+ * @author Gorm
+ */
+public final class Clearance {
+
+    private static final String[] FEATURE_KEYS = {"building", "highway", "railway", "waterway", "barrier"};
+
+    private Clearance() {
+        // Hide default constructor
+    }
+
+    /**
+     * Get the largest radius up to maxRadius that keeps clear of the features around node
+     * <p>
+     * The ring keeps rex.clearance_meter from features, but is never
+     * smaller than half of rex.min_diameter_meter.
+     *
+     * @param node      junction node
+     * @param maxRadius largest radius wanted, in meter
+     * @return radius in meter
+     */
+    public static double getRadius(Node node, double maxRadius) {
+        DataSet ds = node.getDataSet();
+        if (ds == null || !node.isLatLonKnown()) {
+            return maxRadius;
+        }
+        double margin = Config.getPref().getDouble("rex.clearance_meter", 1.5);
+        double minRadius = Math.min(maxRadius, Config.getPref().getDouble("rex.min_diameter_meter", 4) / 2);
+
+        //Only what is closer than this matters
+        double reach = maxRadius + margin;
+        LocalFrame frame = new LocalFrame(node);
+        BBox box = new BBox(frame.lon(-reach), frame.lat(-reach), frame.lon(reach), frame.lat(reach));
+
+        double clear = reach;
+        List<Way> through = node.getParentWays();
+        for (Way way : ds.searchWays(box)) {
+            if (way.isUsable() && isFeature(way) && !way.containsNode(node)) {
+                clear = Math.min(clear, distance(frame, way));
+            }
+        }
+        for (Node other : ds.searchNodes(box)) {
+            if (other != node && other.isUsable() && other.isTagged() && other.isLatLonKnown()) {
+                double d = Math.hypot(frame.x(other), frame.y(other));
+                if (RoundaboutExpander.isMiniRoundabout(other)) {
+                    d /= 2;
+                } else if (isOnAny(other, through)) {
+                    continue;
+                }
+                clear = Math.min(clear, d);
+            }
+        }
+        return Math.max(minRadius, Math.min(maxRadius, clear - margin));
+    }
+
+    private static boolean isOnAny(Node node, List<Way> ways) {
+        for (Way way : ways) {
+            if (way.containsNode(node)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isFeature(Way way) {
+        for (String key : FEATURE_KEYS) {
+            if (way.hasKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return distance in meter from the origin of frame to the nearest segment of way
+     */
+    private static double distance(LocalFrame frame, Way way) {
+        double min = Double.MAX_VALUE;
+        Node first = way.firstNode();
+        if (first == null || !first.isLatLonKnown()) {
+            return min;
+        }
+        double x1 = frame.x(first);
+        double y1 = frame.y(first);
+        min = Math.hypot(x1, y1);
+        for (int i = 1; i < way.getNodesCount(); i++) {
+            Node n = way.getNode(i);
+            if (!n.isLatLonKnown()) {
+                continue;
+            }
+            double x2 = frame.x(n);
+            double y2 = frame.y(n);
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            double length2 = dx * dx + dy * dy;
+            //Where the origin projects onto the segment, clamped to it
+            double t = length2 == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * dx + y1 * dy) / length2));
+            min = Math.min(min, Math.hypot(x1 + t * dx, y1 + t * dy));
+            x1 = x2;
+            y1 = y2;
+        }
+        return min;
+    }
+}
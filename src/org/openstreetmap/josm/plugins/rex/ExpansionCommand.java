@@ -0,0 +1,95 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import static org.openstreetmap.josm.tools.I18n.trn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.PseudoCommand;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+
+/**
+ * Expands planned junctions when it is executed.
+ * <p>
+ * Making the commands of an expansion changes the data for a while, see
+ * {@link RoundaboutExpander#runAsOneCommand}. This command is made from
+ * plans, which only read the data, so it can be made on any thread, e.g.
+ * by a validator fix. The expansion is worked out the first time the command
+ * is executed, on the event dispatch thread when it goes to the undo stack.
+ * After that, undo and redo use the commands made then.
+ *
+ * @author Gorm
+ */
+public class ExpansionCommand extends Command {
+
+    private final List<JunctionPlan> plans;
+
+    /**
+     * The expansion, once worked out
+     */
+    private Command expansion;
+
+    /**
+     * Constructor
+     * @param ds    data set the junctions are in
+     * @param plans plans from {@link RoundaboutExpander#planAll}
+     */
+    public ExpansionCommand(DataSet ds, List<JunctionPlan> plans) {
+        super(ds);
+        this.plans = new ArrayList<>(plans);
+    }
+
+    @Override
+    public boolean executeCommand() {
+        if (expansion == null) {
+            List<Command> commands = new ArrayList<>(1);
+            new RoundaboutExpander(commands::add).expandAll(getAffectedDataSet(), plans, false);
+            if (commands.isEmpty()) {
+                return true;
+            }
+            expansion = commands.get(0);
+        }
+        return expansion.executeCommand();
+    }
+
+    @Override
+    public void undoCommand() {
+        if (expansion != null) {
+            expansion.undoCommand();
+        }
+    }
+
+    @Override
+    public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted,
+            Collection<OsmPrimitive> added) {
+        if (expansion != null) {
+            expansion.fillModifiedData(modified, deleted, added);
+        }
+    }
+
+    @Override
+    public Collection<? extends OsmPrimitive> getParticipatingPrimitives() {
+        if (expansion != null) {
+            return expansion.getParticipatingPrimitives();
+        }
+        List<OsmPrimitive> nodes = new ArrayList<>(plans.size());
+        for (JunctionPlan plan : plans) {
+            nodes.add(plan.getNode());
+        }
+        return nodes;
+    }
+
+    @Override
+    public Collection<? extends PseudoCommand> getChildren() {
+        return expansion != null ? expansion.getChildren() : null;
+    }
+
+    @Override
+    public String getDescriptionText() {
+        return trn("Expand {0} roundabout", "Expand {0} roundabouts", plans.size(), plans.size());
+    }
+}
@@ -0,0 +1,119 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.plugins.rex.geometry.ChordSpacing;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * How to expand roundabouts, given explicitly instead of read from the
+ * preferences and tags for each junction.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Gorm
+ */
+public final class ExpansionParameters {
+
+    private final double diameter;
+    private final Boolean leftHandTraffic;
+    private final double maxChordError;
+    private final int maxRingNodes;
+    private final double maxGapDegrees;
+    private final boolean flares;
+
+    /**
+     * Constructor
+     * @param diameter        diameter in meter, or 0 to use {@link RoundaboutExpander#getRadius(Node)} for each node
+     * @param leftHandTraffic true for clockwise, false for counter clockwise,
+     *                        null to use {@link RoundaboutExpander#isLeftHandTraffic(Node)} for each node
+     * @param maxChordError   largest distance in meter between a ring segment and the circle
+     * @param maxRingNodes    most nodes to spend on a ring
+     * @param flares          true to make flares on the new roundabouts
+     */
+    public ExpansionParameters(double diameter, Boolean leftHandTraffic, double maxChordError, int maxRingNodes,
+            boolean flares) {
+        this(diameter, leftHandTraffic, maxChordError, maxRingNodes, 0, flares);
+    }
+
+    /**
+     * Constructor
+     * @param diameter        diameter in meter, or 0 to use {@link RoundaboutExpander#getRadius(Node)} for each node
+     * @param leftHandTraffic true for clockwise, false for counter clockwise,
+     *                        null to use {@link RoundaboutExpander#isLeftHandTraffic(Node)} for each node
+     * @param maxChordError   largest distance in meter between a ring segment and the circle
+     * @param maxRingNodes    most nodes to spend on a ring
+     * @param maxGapDegrees   largest angle between ring nodes whatever the size, 0 for no bound
+     * @param flares          true to make flares on the new roundabouts
+     */
+    public ExpansionParameters(double diameter, Boolean leftHandTraffic, double maxChordError, int maxRingNodes,
+            double maxGapDegrees, boolean flares) {
+        this.diameter = diameter;
+        this.leftHandTraffic = leftHandTraffic;
+        this.maxChordError = maxChordError;
+        this.maxRingNodes = maxRingNodes;
+        this.maxGapDegrees = maxGapDegrees;
+        this.flares = flares;
+    }
+
+    /**
+     * Get the parameters the user interface uses: sizes from the preferences
+     * and tags of each node, and no flares.
+     * <p>
+     * rex.max_gap_degrees, which used to set the spacing of the ring nodes on
+     * its own, is still honoured as an upper bound if it is set.
+     * @return the parameters
+     */
+    public static ExpansionParameters fromPreferences() {
+        return new ExpansionParameters(0, null,
+                Config.getPref().getDouble("rex.max_chord_error", 0.3),
+                Config.getPref().getInt("rex.max_ring_nodes", 48),
+                getMaxGapDegrees(),
+                false);
+    }
+
+    /**
+     * @return rex.max_gap_degrees, 0 if not set
+     */
+    public static double getMaxGapDegrees() {
+        return Config.getPref().getInt("rex.max_gap_degrees", 0);
+    }
+
+    /**
+     * @return diameter in meter, or 0 if it is worked out for each node
+     */
+    public double getDiameter() {
+        return diameter;
+    }
+
+    /**
+     * @param node node to be expanded
+     * @return radius in meter
+     */
+    public double getRadius(Node node) {
+        return diameter > 0 ? diameter / 2 : RoundaboutExpander.getRadius(node);
+    }
+
+    /**
+     * @param node node to be expanded
+     * @return true if the roundabout should go clockwise
+     */
+    public boolean isLeftHandTraffic(Node node) {
+        return leftHandTraffic != null ? leftHandTraffic : RoundaboutExpander.isLeftHandTraffic(node);
+    }
+
+    /**
+     * @param radius radius in meter
+     * @return max gap between ring nodes in radians
+     */
+    public double getMaxGap(double radius) {
+        return ChordSpacing.maxGap(radius, maxChordError, maxRingNodes, Math.toRadians(maxGapDegrees));
+    }
+
+    /**
+     * @return true if flares are to be made
+     */
+    public boolean isFlares() {
+        return flares;
+    }
+}
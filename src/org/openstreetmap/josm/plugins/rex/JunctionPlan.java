@@ -0,0 +1,195 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander.HighComp;
+import org.openstreetmap.josm.plugins.rex.geometry.ChordSpacing;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+
+/**
+ * How one junction is to be expanded, worked out from the data without changing it.
+ * <p>
+ * Planning is the costly part of an expansion: finding the size, ranking the
+ * ways and doing the geometry. As it only reads the data, it can be done off the
+ * event dispatch thread under the read lock, while the commands are made and
+ * executed later on the event dispatch thread, see
+ * {@link RoundaboutExpander#expandAll(org.openstreetmap.josm.data.osm.DataSet, List, boolean)}.
+ * <p>
+ * Each way end at the junction is an arm, known by the next node along its way.
+ * If the junction has changed since it was planned, the plan is not used and
+ * the geometry is worked out again from the data as it is.
+ *
+ * @author Gorm
+ */
+public final class JunctionPlan {
+
+    final Node node;
+    final LatLon center;
+    final double radius;
+    final boolean leftHandTraffic;
+    final double maxGap;
+
+    /** Usable ways at the node when planned */
+    final List<Way> ways;
+    /** Ways with the node in their middle, to be split there */
+    final List<Way> splitWays;
+    /** Tags for the roundabout, from the most prominent way */
+    final Map<String, String> tags;
+
+    /** Next node of each arm, sorted by bearing */
+    final Node[] arms;
+    /** Where the next node of each arm was when planned */
+    final LatLon[] armCoords;
+    /** Where the end of each arm goes on the ring */
+    final LatLon[] targets;
+    /** Filler nodes to make after each arm */
+    final LatLon[][] fillers;
+
+    private JunctionPlan(Node node, double radius, boolean leftHandTraffic, double maxGap, List<Way> ways,
+            List<Node> arms) {
+        this.node = node;
+        this.center = node.getCoor();
+        this.radius = radius;
+        this.leftHandTraffic = leftHandTraffic;
+        this.maxGap = maxGap;
+        this.ways = ways;
+
+        splitWays = new ArrayList<>();
+        for (Way way : ways) {
+            if (!way.isFirstLastNode(node)) {
+                splitWays.add(way);
+            }
+        }
+
+        List<Way> refWays = new ArrayList<>(ways);
+        refWays.sort(new HighComp(node));
+        tags = refWays.isEmpty() ? Collections.emptyMap() : refWays.get(0).getKeys();
+
+        //Move each arm end towards its next node, then sort by bearing
+        LocalFrame frame = new LocalFrame(center);
+        int s = arms.size();
+        this.arms = arms.toArray(new Node[s]);
+        LatLon[] ends = new LatLon[s];
+        double[] bearings = new double[s];
+        for (int i = 0; i < s; i++) {
+            ends[i] = frame.towards(center, this.arms[i], radius);
+            bearings[i] = frame.bearing(ends[i]);
+        }
+        Integer[] order = new Integer[s];
+        for (int i = 0; i < s; i++) {
+            order[i] = i;
+        }
+        LocalFrame.sortByKey(bearings, order);
+        targets = new LatLon[s];
+        armCoords = new LatLon[s];
+        Node[] sorted = new Node[s];
+        for (int i = 0; i < s; i++) {
+            sorted[i] = this.arms[order[i]];
+            targets[i] = ends[order[i]];
+        }
+        System.arraycopy(sorted, 0, this.arms, 0, s);
+        for (int i = 0; i < s; i++) {
+            armCoords[i] = this.arms[i].getCoor();
+        }
+
+        //Fillers between each arm and the next, the last one going round to the first
+        fillers = new LatLon[s][];
+        for (int i = 0; i < s; i++) {
+            double bearing1 = bearings[i];
+            double bearing2 = i + 1 < s ? bearings[i + 1] : bearings[0] + Math.PI * 2;
+            double gap = bearing2 - bearing1;
+            int fillersToMake = ChordSpacing.fillers(gap, maxGap);
+            fillers[i] = new LatLon[fillersToMake];
+            double toNext = gap / (fillersToMake + 1);
+            for (int j = 1; j <= fillersToMake; j++) {
+                fillers[i][j - 1] = frame.atBearing(bearing1 + toNext * j, radius);
+            }
+        }
+    }
+
+    /**
+     * Plan the expansion of a junction
+     * @param node            node to expand
+     * @param radius          radius of the roundabout in meter
+     * @param leftHandTraffic true for a clockwise roundabout
+     * @param maxGap          max gap in radians between ring nodes
+     * @return the plan
+     */
+    static JunctionPlan plan(Node node, double radius, boolean leftHandTraffic, double maxGap) {
+        List<Way> ways = new JunctionTopology().getWays(node);
+        return new JunctionPlan(node, radius, leftHandTraffic, maxGap, ways, findArms(node, ways));
+    }
+
+    /**
+     * Find the next node of each way end at node, as there will be after splitting
+     */
+    private static List<Node> findArms(Node node, List<Way> ways) {
+        List<Node> arms = new ArrayList<>();
+        for (Way way : ways) {
+            List<Node> nodes = way.getNodes();
+            for (int i = 0; i < nodes.size(); i++) {
+                if (nodes.get(i) == node) {
+                    if (i > 0) {
+                        arms.add(nodes.get(i - 1));
+                    }
+                    if (i + 1 < nodes.size()) {
+                        arms.add(nodes.get(i + 1));
+                    }
+                }
+            }
+        }
+        return arms;
+    }
+
+    /**
+     * @return the node to expand
+     */
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * @return radius of the roundabout in meter
+     */
+    public double getRadius() {
+        return radius;
+    }
+
+    /**
+     * Check that the junction is still as it was planned
+     * @param junction the ways at the nodes, as they are now
+     * @return true if the plan can be used
+     */
+    boolean isCurrent(JunctionTopology junction) {
+        if (!node.isUsable() || !center.equals(node.getCoor())) {
+            return false;
+        }
+        List<Way> now = junction.getWays(node);
+        if (!new HashSet<>(now).equals(new HashSet<>(ways))) {
+            return false;
+        }
+        //Same arms, with the next nodes where they were
+        Map<Node, Integer> count = new HashMap<>();
+        for (int i = 0; i < arms.length; i++) {
+            if (!armCoords[i].equals(arms[i].getCoor())) {
+                return false;
+            }
+            count.merge(arms[i], 1, Integer::sum);
+        }
+        for (Node arm : findArms(node, now)) {
+            if (count.merge(arm, -1, Integer::sum) < 0) {
+                return false;
+            }
+        }
+        return count.values().stream().allMatch(c -> c == 0);
+    }
+}
@@ -0,0 +1,150 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.command.AddCommand;
+import org.openstreetmap.josm.command.ChangeNodesCommand;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.SplitWayCommand;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * The ways at the nodes of a junction, kept while the junction is changed.
+ * <p>
+ * The ways at a node are read from the data the first time they are asked
+ * for. After that they are kept up to date from the commands that change
+ * ways, see {@link #beforeCommand(Command)} and {@link #afterCommand(Command, Map)},
+ * so the referrers of a node are only scanned once per operation.
+ * <p>
+ * The positions of the nodes in a way are kept the same way.
+ *
+ * @author Gorm
+ */
+final class JunctionTopology {
+
+    /**
+     * Usable ways at each node looked at, in the order first seen
+     */
+    private final Map<Node, List<Way>> waysByNode = new HashMap<>();
+
+    /**
+     * First position of each node in a way
+     */
+    private final Map<Way, Map<Node, Integer>> positionsByWay = new HashMap<>();
+
+    /**
+     * Get the usable ways at node
+     * @param node node
+     * @return a copy of the ways, which the caller may change
+     */
+    List<Way> getWays(Node node) {
+        return new ArrayList<>(waysByNode.computeIfAbsent(node, JunctionTopology::readWays));
+    }
+
+    /**
+     * Start keeping track of a node that is not in any way yet
+     * @param node new node
+     */
+    void track(Node node) {
+        waysByNode.putIfAbsent(node, new ArrayList<>(1));
+    }
+
+    /**
+     * Get the first position of each node in way
+     * @param way way
+     * @return the positions, must not be changed
+     */
+    Map<Node, Integer> getPositions(Way way) {
+        return positionsByWay.computeIfAbsent(way, w -> {
+            List<Node> nodes = w.getNodes();
+            Map<Node, Integer> positions = new HashMap<>(nodes.size() * 2);
+            for (int i = 0; i < nodes.size(); i++) {
+                positions.putIfAbsent(nodes.get(i), i);
+            }
+            return positions;
+        });
+    }
+
+    /**
+     * Note the nodes of the ways a command is about to change
+     * @param command command about to be executed
+     * @return the node lists before, to pass to {@link #afterCommand}
+     */
+    Map<Way, List<Node>> beforeCommand(Command command) {
+        if (!(command instanceof ChangeNodesCommand || command instanceof SplitWayCommand)) {
+            return Collections.emptyMap();
+        }
+        Map<Way, List<Node>> before = new HashMap<>();
+        for (OsmPrimitive osm : command.getParticipatingPrimitives()) {
+            if (osm instanceof Way) {
+                before.put((Way) osm, ((Way) osm).getNodes());
+            }
+        }
+        return before;
+    }
+
+    /**
+     * Update from a command that has been executed
+     * @param command the command
+     * @param before  what {@link #beforeCommand} returned for it
+     */
+    void afterCommand(Command command, Map<Way, List<Node>> before) {
+        if (command instanceof AddCommand) {
+            for (OsmPrimitive osm : command.getParticipatingPrimitives()) {
+                if (osm instanceof Way) {
+                    wayChanged((Way) osm, Collections.emptyList());
+                }
+            }
+        } else if (command instanceof SplitWayCommand) {
+            before.forEach(this::wayChanged);
+            for (Way way : ((SplitWayCommand) command).getNewWays()) {
+                wayChanged(way, Collections.emptyList());
+            }
+        } else {
+            before.forEach(this::wayChanged);
+        }
+    }
+
+    /**
+     * Update the nodes that way left or joined
+     */
+    private void wayChanged(Way way, List<Node> oldNodes) {
+        positionsByWay.remove(way);
+        Set<Node> newNodes = new HashSet<>(way.getNodes());
+        for (Node node : oldNodes) {
+            List<Way> ways = waysByNode.get(node);
+            if (ways != null && !newNodes.contains(node)) {
+                ways.remove(way);
+            }
+        }
+        Set<Node> old = new HashSet<>(oldNodes);
+        for (Node node : newNodes) {
+            List<Way> ways = waysByNode.get(node);
+            if (ways != null && !old.contains(node) && !ways.contains(way)) {
+                ways.add(way);
+            }
+        }
+    }
+
+    /**
+     * @return usable ways among the referrers of node
+     */
+    private static List<Way> readWays(Node node) {
+        List<Way> ways = new ArrayList<>();
+        for (OsmPrimitive osm : node.getReferrers()) {
+            if (osm instanceof Way && osm.isUsable()) {
+                ways.add((Way) osm);
+            }
+        }
+        return ways;
+    }
+}
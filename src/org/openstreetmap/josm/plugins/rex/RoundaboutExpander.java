@@ -0,0 +1,1836 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+import static org.openstreetmap.josm.tools.I18n.trn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.openstreetmap.josm.command.AddCommand;
+import org.openstreetmap.josm.command.ChangeNodesCommand;
+import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.DeleteCommand;
+import org.openstreetmap.josm.command.MoveCommand;
+import org.openstreetmap.josm.command.SequenceCommand;
+import org.openstreetmap.josm.command.SplitWayCommand;
+import org.openstreetmap.josm.data.coor.ILatLon;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DefaultNameFormatter;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmDataManager;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.plugins.rex.geometry.ChordSpacing;
+import org.openstreetmap.josm.plugins.rex.geometry.CircleFit;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+import org.openstreetmap.josm.plugins.rex.stats.ExpansionStats;
+import org.openstreetmap.josm.plugins.rex.stats.ExpansionStats.Phase;
+import org.openstreetmap.josm.plugins.rex.stats.ExpansionStats.Timer;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Does the work of expanding to a roundabout, without any user interface.
+ * <p>
+ * All changes are made through commands, which are handed to a sink.
+ * The user interface adds them to the undo stack, while batch processing
+ * may just execute them.
+ * <p>
+ * An instance is not thread safe, use one per thread.
+ *
+ * @author Gorm
+ */
+public class RoundaboutExpander {
+
+    /**
+     * Nodes closer than this to where they should be, in meter, are not moved
+     */
+    private static final double MIN_MOVE = 0.01;
+
+    /**
+     * Where finished commands go
+     */
+    private final Consumer<Command> sink;
+
+    /**
+     * Commands executed during the running step, null when no step is running
+     */
+    private List<Command> batch;
+
+    /**
+     * Ways at the junction nodes, while a step is running
+     */
+    private JunctionTopology topology;
+
+    /**
+     * Constructor
+     * <p>
+     * The sink gets each finished command before it is executed. It may
+     * execute it right away, put it on the undo stack, or keep it for later.
+     *
+     * @param sink receives the commands made
+     */
+    public RoundaboutExpander(Consumer<Command> sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Check if node is tagged highway=mini_roundabout
+     * @param node node
+     * @return true if the node is a mini roundabout
+     */
+    public static boolean isMiniRoundabout(Node node) {
+        return "mini_roundabout".equals(node.get("highway"));
+    }
+
+    /**
+     * Get the radius to use when expanding node.
+     * <p>
+     * Default is rex.diameter_meter, overridden by the diameter tag on the node.
+     * That is the largest size wanted: the radius is made smaller if needed to
+     * keep clear of what is around the node, see {@link Clearance}. That can be
+     * turned off with rex.auto_diameter.
+     * @param node node to be expanded
+     * @return radius in meter
+     */
+    public static double getRadius(Node node) {
+        double radi = Config.getPref().getInt("rex.diameter_meter", 12) / 2d;
+
+        //See if user want another size
+        if (node.hasKey("diameter")) {
+            try {
+                int d = Integer.parseInt(node.get("diameter"));
+                radi = d / 2d;
+                Logging.debug("REX: diameter overridden by tag diameter={0}", d);
+            } catch (NumberFormatException ex) {
+                Logging.warn("REX: failed getting diameter from node tag diameter");
+                Logging.warn(ex);
+            }
+        }
+
+        if (Config.getPref().getBoolean("rex.auto_diameter", true)) {
+            double clear = Clearance.getRadius(node, radi);
+            if (clear < radi) {
+                Logging.debug("REX: diameter reduced to {0} to keep clear", clear * 2);
+            }
+            return clear;
+        }
+        return radi;
+    }
+
+    /**
+     * Get the direction to use when expanding node.
+     * <p>
+     * Default is mappaint.lefthandtraffic, overridden by direction=clockwise on the node.
+     * @param node node to be expanded
+     * @return true if the roundabout should go clockwise
+     */
+    public static boolean isLeftHandTraffic(Node node) {
+        //See if user want another direction
+        if ("clockwise".equals(node.get("direction"))) {
+            Logging.debug("REX: direction overridden by direction=clockwise");
+            return true;
+        }
+        return Config.getPref().getBoolean("mappaint.lefthandtraffic", false);
+    }
+
+    /**
+     * Get the max gap between nodes in a roundabout of the given size
+     * <p>
+     * The gap is chosen so no segment of the ring is further than
+     * rex.max_chord_error meter from the circle, while the ring does not
+     * get more than about rex.max_ring_nodes nodes.
+     *
+     * @param radius radius of the roundabout in meter
+     * @return max gap in radians
+     * @see ChordSpacing
+     */
+    public static double getMaxGap(double radius) {
+        return ExpansionParameters.fromPreferences().getMaxGap(radius);
+    }
+
+    /**
+     * Expand all given mini roundabout nodes to roundabouts.
+     * <p>
+     * All the work is applied as one command, so it can be undone in one step.
+     * Nodes that are not usable mini roundabouts are skipped.
+     *
+     * @param ds    data set the nodes are in
+     * @param nodes mini roundabout nodes to expand
+     * @return the new roundabout ways
+     */
+    public List<Way> expandAll(DataSet ds, Collection<Node> nodes) {
+        return expandAll(ds, nodes, NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Expand all given mini roundabout nodes to roundabouts, reporting progress
+     * per junction.
+     * <p>
+     * If the monitor is canceled while planning, nothing is changed or
+     * handed to the sink and a {@link CancellationException} is thrown.
+     *
+     * @param ds      data set the nodes are in
+     * @param nodes   mini roundabout nodes to expand
+     * @param monitor progress monitor
+     * @return the new roundabout ways
+     * @see #expandAll(DataSet, Collection)
+     */
+    public List<Way> expandAll(DataSet ds, Collection<Node> nodes, ProgressMonitor monitor) {
+        return expandAll(ds, nodes, ExpansionParameters.fromPreferences(), monitor);
+    }
+
+    /**
+     * Expand all given mini roundabout nodes to roundabouts, with the given
+     * parameters instead of the preferences.
+     * <p>
+     * The junctions are planned first, see {@link #planAll}, then expanded.
+     *
+     * @param ds      data set the nodes are in
+     * @param nodes   mini roundabout nodes to expand
+     * @param params  how to expand them
+     * @param monitor progress monitor, for the planning
+     * @return the new roundabout ways
+     * @see #expandAll(DataSet, Collection, ProgressMonitor)
+     */
+    public List<Way> expandAll(DataSet ds, Collection<Node> nodes, ExpansionParameters params, ProgressMonitor monitor) {
+        return expandAll(ds, planAll(ds, nodes, params, monitor), params.isFlares());
+    }
+
+    /**
+     * Plan the expansion of mini roundabouts, without changing anything.
+     * <p>
+     * This only reads the data, under its read lock, so it may run off the
+     * event dispatch thread. Nodes that are not usable mini roundabouts in ds
+     * are skipped. If the monitor is canceled, a {@link CancellationException}
+     * is thrown.
+     *
+     * @param ds      data set the nodes are in
+     * @param nodes   mini roundabout nodes to expand
+     * @param params  how to expand them
+     * @param monitor progress monitor, with progress per junction
+     * @return the plans, to pass to {@link #expandAll(DataSet, List, boolean)}
+     */
+    public static List<JunctionPlan> planAll(DataSet ds, Collection<Node> nodes, ExpansionParameters params,
+            ProgressMonitor monitor) {
+        List<JunctionPlan> plans = new ArrayList<>(nodes.size());
+        monitor.beginTask(tr("Planning roundabouts"), nodes.size());
+        ds.getReadLock().lock();
+        try (Timer t = ExpansionStats.start(Phase.PLAN)) {
+            for (Node node : nodes) {
+                if (monitor.isCanceled()) {
+                    throw new CancellationException();
+                }
+                if (node.isUsable() && node.getDataSet() == ds && isMiniRoundabout(node)) {
+                    monitor.subTask(tr("Planning roundabout {0} of {1}", plans.size() + 1, nodes.size()));
+                    double radius = params.getRadius(node);
+                    plans.add(JunctionPlan.plan(node, radius, params.isLeftHandTraffic(node), params.getMaxGap(radius)));
+                }
+                monitor.worked(1);
+            }
+        } finally {
+            ds.getReadLock().unlock();
+            monitor.finishTask();
+        }
+        return plans;
+    }
+
+    /**
+     * Expand planned junctions to roundabouts.
+     * <p>
+     * All the work is applied as one command, so it can be undone in one step.
+     * A junction that has changed since it was planned is worked out again
+     * from the data as it is, and one whose node is gone is skipped.
+     *
+     * @param ds     data set the junctions are in
+     * @param plans  plans from {@link #planAll}
+     * @param flares true to make flares on the new roundabouts
+     * @return the new roundabout ways
+     */
+    public List<Way> expandAll(DataSet ds, List<JunctionPlan> plans, boolean flares) {
+        List<JunctionPlan> toExpand = new ArrayList<>(plans.size());
+        for (JunctionPlan plan : plans) {
+            if (plan.node.isUsable() && plan.node.getDataSet() == ds) {
+                toExpand.add(plan);
+            }
+        }
+        return runAsOneCommand(ds,
+                trn("Expand {0} roundabout", "Expand {0} roundabouts", toExpand.size(), toExpand.size()),
+                () -> {
+                    //Which plans still hold, looked at before anything is changed
+                    JunctionTopology junction = topology();
+                    boolean[] current = new boolean[toExpand.size()];
+                    for (int i = 0; i < current.length; i++) {
+                        current[i] = toExpand.get(i).isCurrent(junction);
+                    }
+                    //Split for all of them in one go
+                    try (Timer t = ExpansionStats.start(Phase.SPLIT)) {
+                        splitAll(toExpand, current);
+                    }
+                    List<Way> ways = new ArrayList<>(toExpand.size());
+                    for (int i = 0; i < current.length; i++) {
+                        Way way = makeRoundabout(toExpand.get(i), current[i]);
+                        if (flares) {
+                            List<Node> candidates = findFlareCandidates(way);
+                            if (!candidates.isEmpty()) {
+                                makeFlares(candidates);
+                            }
+                        }
+                        ways.add(way);
+                    }
+                    return ways;
+                });
+    }
+
+    /**
+     * Run a step so that all the commands it makes are applied as one command.
+     * <p>
+     * Each command is executed as soon as it is made, as the next ones are
+     * built from the result. When the step is done, they are all rolled back
+     * and handed to the sink as one {@link SequenceCommand}.
+     * Everything happens inside one DataSet update, so listeners are only
+     * notified once.
+     * <p>
+     * If a step is already running, the commands become part of that one.
+     *
+     * @param ds   the data set being changed
+     * @param name name of the combined command
+     * @param step the step to run
+     * @return whatever step returns
+     */
+    public <T> T runAsOneCommand(DataSet ds, String name, Supplier<T> step) {
+        return runAsOneCommand(ds, () -> name, step);
+    }
+
+    /**
+     * Run a step so that all the commands it makes are applied as one command,
+     * naming the command once the step is done, e.g. after what it managed to do.
+     *
+     * @param ds   the data set being changed
+     * @param name gives the name of the combined command, asked after the step
+     * @param step the step to run
+     * @return whatever step returns
+     * @see #runAsOneCommand(DataSet, String, Supplier)
+     */
+    public <T> T runAsOneCommand(DataSet ds, Supplier<String> name, Supplier<T> step) {
+        if (batch != null) {
+            return step.get();
+        }
+        List<Command> commands = new ArrayList<>();
+        T result;
+        ds.beginUpdate();
+        try {
+            batch = commands;
+            topology = new JunctionTopology();
+            try {
+                result = step.get();
+            } finally {
+                batch = null;
+                topology = null;
+                //Roll back what was done, also if something failed
+                for (int i = commands.size() - 1; i >= 0; i--) {
+                    commands.get(i).undoCommand();
+                }
+            }
+            try (Timer t = ExpansionStats.start(Phase.SUBMIT)) {
+                if (commands.size() == 1) {
+                    sink.accept(commands.get(0));
+                } else if (!commands.isEmpty()) {
+                    sink.accept(new SequenceCommand(name.get(), commands));
+                }
+            }
+            if (Logging.isDebugEnabled()) {
+                Logging.debug("REX: {0}: {1} commands, about {2} bytes kept for undo",
+                        name.get(), commands.size(), UndoMemory.estimate(commands));
+            }
+        } finally {
+            ds.endUpdate();
+        }
+        return result;
+    }
+
+    /**
+     * Run part of a step so that the commands it makes become one command
+     * within the step.
+     * <p>
+     * The commands are executed as they are made, then rolled back and
+     * executed again as one {@link SequenceCommand}.
+     * If no step is running, the part is run as a step of its own.
+     *
+     * @param ds   the data set being changed
+     * @param name name of the combined command
+     * @param part the part to run
+     */
+    private void group(DataSet ds, String name, Runnable part) {
+        if (batch == null) {
+            runAsOneCommand(ds, name, () -> {
+                part.run();
+                return null;
+            });
+            return;
+        }
+        List<Command> outer = batch;
+        List<Command> commands = new ArrayList<>();
+        batch = commands;
+        try {
+            part.run();
+        } finally {
+            batch = outer;
+            for (int i = commands.size() - 1; i >= 0; i--) {
+                commands.get(i).undoCommand();
+            }
+        }
+        //The commands were counted as they were made
+        if (commands.size() == 1) {
+            execute(commands.get(0));
+        } else if (!commands.isEmpty()) {
+            execute(new SequenceCommand(name, commands));
+        }
+    }
+
+    /**
+     * Get the ways at the junction nodes for the running step,
+     * or a new, empty topology if no step is running
+     */
+    private JunctionTopology topology() {
+        return topology != null ? topology : new JunctionTopology();
+    }
+
+    /**
+     * Execute command, or record it if a step is running
+     * @param command command to execute
+     */
+    protected void addCommand(Command command) {
+        ExpansionStats.count(command);
+        execute(command);
+    }
+
+    /**
+     * Execute command, or record it if a step is running, without counting it.
+     * Used for commands made of commands that are already counted.
+     * @param command command to execute
+     */
+    private void execute(Command command) {
+        if (batch != null) {
+            Map<Way, List<Node>> before = topology.beforeCommand(command);
+            command.executeCommand();
+            topology.afterCommand(command, before);
+            batch.add(command);
+        } else {
+            sink.accept(command);
+        }
+    }
+
+    /**
+     * Tag node as roundabout
+     * <p>
+     * The diameter tag written is the largest size the node is expanded to,
+     * it is still made smaller to keep clear of what is around it.
+     * <p>
+     * This method is overloaded with (Way circle)
+     * @param node node
+     */
+    public void tagAsRoundabout(Node node) {
+        tagAsRoundabout(node, Config.getPref().getInt("rex.diameter_meter", 12));
+    }
+
+    /**
+     * Tag node as roundabout, with the given diameter
+     * @param node     node
+     * @param diameter diameter in meter
+     */
+    public void tagAsRoundabout(Node node, int diameter) {
+        // TODO direction as well?
+        Map<String, String> tags = new HashMap<>();
+        tags.put("junction", "roundabout");
+        tags.put("highway", "mini_roundabout");
+        tags.put("diameter", Integer.toString(diameter));
+        addCommand(new ChangePropertyCommand(Collections.singleton(node), tags));
+    }
+
+    /**
+     * Tag closed way as roundabout
+     * <p>
+     * This method is overloaded with (Node node)
+     * @param circle way
+     */
+    public void tagAsRoundabout(Way circle) {
+        DataSet ds = circle.getDataSet();
+        if (ds == null) {
+            ds = OsmDataManager.getInstance().getEditDataSet();
+        }
+        addCommand(new ChangePropertyCommand(ds, Collections.singleton(circle), getRoundaboutTags(circle)));
+    }
+
+    /**
+     * Find the tag changes needed to make a closed way a roundabout
+     * @param circle way
+     * @return tags to set, an empty value means the tag is to be removed
+     */
+    private static Map<String, String> getRoundaboutTags(Way circle) {
+        Map<String, String> tags = new HashMap<>();
+        //Main tag to make a way a roundabout
+        tags.put("junction", "roundabout");
+        //oneway is implicit from junction=roundabout, so not needed
+        //TODO If oneway=-1 then reverse direction of circle before
+        tags.put("oneway", "");
+
+        //If mistagged as a mini_roundabout, remove it
+        if ("mini_roundabout".equals(circle.getKeys().get("highway"))) {
+            tags.put("highway", "");
+        }
+
+        //If not already tagged as highway, tag as road
+        if (!circle.getKeys().containsKey("highway")) {
+            tags.put("highway", "road");
+        }
+        return tags;
+    }
+
+    /**
+     * Create a roundabout way
+     *
+     * @param node            Node to expand to Roundabout
+     * @param radi            Radius of roundabout in meter
+     * @param lefthandtraffic Direction of roundabout
+     * @param maxGap         Max gap in radians between nodes to make it pretty, see {@link #getMaxGap(double)}
+     * @return the new roundabout way
+     */
+    public Way makeRoundabout(Node node, double radi, boolean lefthandtraffic, double maxGap) {
+        return makeRoundabout(JunctionPlan.plan(node, radi, lefthandtraffic, maxGap), true);
+    }
+
+    /**
+     * Create a roundabout way from a plan
+     * @param plan    the plan
+     * @param current true if the plan still holds, else the geometry is worked out again
+     */
+    private Way makeRoundabout(JunctionPlan plan, boolean current) {
+        return runAsOneCommand(plan.node.getDataSet(), tr("Expand roundabout"),
+                () -> {
+                    try (Timer t = ExpansionStats.start(Phase.EXPAND)) {
+                        return expandRoundabout(plan, current);
+                    }
+                });
+    }
+
+    private Way expandRoundabout(JunctionPlan plan, boolean current) {
+        Node node = plan.node;
+        DataSet ds = node.getDataSet();
+        double radi = plan.radius;
+        double maxGap = plan.maxGap;
+
+        //Store center for later use
+        ILatLon center = node.getCoor();
+
+        //Copy tags from most prominent way.
+        Map<String, String> tagsToCopy = new HashMap<>();
+        if (current) {
+            tagsToCopy.putAll(plan.tags);
+        } else {
+            List<Way> refWays = topology().getWays(node);
+            refWays.sort(new HighComp(node));
+            if (!refWays.isEmpty()) {
+                tagsToCopy.putAll(refWays.get(0).getKeys());
+            }
+        }
+
+        //Remove irrelevant tagging from the node
+        Map<String, String> tagsToRemove = new HashMap<>();
+        for (String key : new String[] {"highway", "junction", "direction", "diameter", "oneway"}) {
+            if (node.hasKey(key)) {
+                tagsToRemove.put(key, "");
+            }
+        }
+        if (!tagsToRemove.isEmpty()) {
+            addCommand(new ChangePropertyCommand(ds, Collections.singleton(node), tagsToRemove));
+        }
+
+        //Split all ways using the node
+        try (Timer t = ExpansionStats.start(Phase.SPLIT)) {
+            splitAll(node);
+        }
+
+        //Unglue so the ways at node connected anymore
+        //We'll continue working with the resulting nodes.
+        List<Node> ungroupedNodes;
+        try (Timer t = ExpansionStats.start(Phase.UNGLUE)) {
+            ungroupedNodes = unglueWays(node);
+        }
+
+        //Place the way ends on the ring and fill the gaps between them,
+        //as planned if the way ends are the planned ones
+        List<Node> roundaboutNodes = current ? placeAsPlanned(plan, ungroupedNodes) : null;
+        if (roundaboutNodes == null) {
+            roundaboutNodes = place(ds, center, ungroupedNodes, radi, maxGap);
+        }
+
+        //Counter clockwise unless desired otherwise.
+        //Keeping the order avoids funny figure of eight roundabouts.
+        if (!plan.leftHandTraffic) {
+            Collections.reverse(roundaboutNodes);
+        }
+
+        //Create the roundabout way
+        Way newRoundaboutWay = new Way();
+
+        //add the nodes to the way
+        newRoundaboutWay.setNodes(roundaboutNodes);
+
+        //and the first again, closing it
+        newRoundaboutWay.addNode(newRoundaboutWay.firstNode());
+
+        //Paste tagging from the most prominent way, and add roundabout tagging.
+        //The way is new, so there is no need for a command to do that.
+        newRoundaboutWay.setKeys(tagsToCopy);
+        for (Map.Entry<String, String> tag : getRoundaboutTags(newRoundaboutWay).entrySet()) {
+            if (tag.getValue().isEmpty()) {
+                newRoundaboutWay.remove(tag.getKey());
+            } else {
+                newRoundaboutWay.put(tag.getKey(), tag.getValue());
+            }
+        }
+
+        //Add it to osm
+        addCommand(new AddCommand(ds, newRoundaboutWay));
+
+        return newRoundaboutWay;
+    }
+
+    /**
+     * Move the way ends and make the filler nodes as planned
+     * @param plan the plan, still current
+     * @param ends the way ends at the junction, after ungluing
+     * @return the ring nodes, sorted clockwise, or null if the ends are not the planned arms
+     */
+    private List<Node> placeAsPlanned(JunctionPlan plan, List<Node> ends) {
+        if (ends.size() != plan.arms.length) {
+            return null;
+        }
+        //Match each way end with its arm by the next node along its way.
+        //All are matched before anything is changed, so the live placing can still be done.
+        JunctionTopology junction = topology();
+        Map<Node, List<Node>> endsByArm = new HashMap<>();
+        for (Node end : ends) {
+            List<Way> ways = junction.getWays(end);
+            if (ways.size() != 1 || ways.get(0).getNodesCount() < 2 || !ways.get(0).isFirstLastNode(end)) {
+                return null;
+            }
+            Way way = ways.get(0);
+            Node next = way.firstNode() == end ? way.getNode(1) : way.getNode(way.getNodesCount() - 2);
+            endsByArm.computeIfAbsent(next, k -> new ArrayList<>(1)).add(end);
+        }
+        Node[] ring = new Node[plan.arms.length];
+        for (int i = 0; i < ring.length; i++) {
+            List<Node> matches = endsByArm.get(plan.arms[i]);
+            if (matches == null || matches.isEmpty() || !plan.armCoords[i].equals(plan.arms[i].getCoor())) {
+                return null;
+            }
+            ring[i] = matches.remove(matches.size() - 1);
+        }
+
+        try (Timer t = ExpansionStats.start(Phase.MOVE_ENDS)) {
+            for (int i = 0; i < ring.length; i++) {
+                addCommand(new MoveCommand(ring[i], plan.targets[i]));
+            }
+        }
+        DataSet ds = plan.node.getDataSet();
+        List<Node> roundaboutNodes = new ArrayList<>(ring.length + (int) (Math.PI * 2 / plan.maxGap));
+        try (Timer t = ExpansionStats.start(Phase.FILLERS)) {
+            for (int i = 0; i < ring.length; i++) {
+                roundaboutNodes.add(ring[i]);
+                for (LatLon at : plan.fillers[i]) {
+                    Node fillerNode = new Node(at);
+                    addCommand(new AddCommand(ds, fillerNode));
+                    roundaboutNodes.add(fillerNode);
+                }
+            }
+        }
+        return roundaboutNodes;
+    }
+
+    /**
+     * Move the way ends and make the filler nodes, worked out from the data as it is
+     * @param ds     data set to add the filler nodes to
+     * @param center center of the roundabout
+     * @param ends   the way ends at the junction, after ungluing
+     * @param radi   radius in meter
+     * @param maxGap max gap in radians between ring nodes
+     * @return the ring nodes, sorted clockwise
+     */
+    private List<Node> place(DataSet ds, ILatLon center, List<Node> ends, double radi, double maxGap) {
+        //Do the geometry in a flat plane around the center
+        LocalFrame frame = new LocalFrame(center);
+
+        //Move nodes towards the next node in each way
+        try (Timer t = ExpansionStats.start(Phase.MOVE_ENDS)) {
+            for (Node n : ends) {
+                moveWayEndNodeTowardsNextNode(n, radi, frame);
+            }
+        }
+
+        //Sort clockwise, using the bearing of each node as key
+        int s = ends.size();
+        Node[] ring = ends.toArray(new Node[s]);
+        double[] bearings = new double[s];
+        try (Timer t = ExpansionStats.start(Phase.SORT)) {
+            for (int i = 0; i < s; i++) {
+                bearings[i] = frame.bearing(ring[i]);
+            }
+            LocalFrame.sortByKey(bearings, ring);
+        }
+
+        //Construct some nodes to make it pretty.
+        //They are made in order, so the nodes stay sorted clockwise.
+        List<Node> roundaboutNodes = new ArrayList<>(s + (int) (Math.PI * 2 / maxGap));
+        Node fillerNode;
+        double bearing1, bearing2;
+        try (Timer t = ExpansionStats.start(Phase.FILLERS)) {
+            for (int i = 0; i < s; i++) {
+                roundaboutNodes.add(ring[i]);
+
+                bearing1 = bearings[i];
+                //Add full circle (2PI) to the last one to "come around" the circle.
+                bearing2 = i + 1 < s ? bearings[i + 1] : bearings[0] + Math.PI * 2;
+
+                double gap = bearing2 - bearing1;
+                int fillersToMake = ChordSpacing.fillers(gap, maxGap);
+                if (fillersToMake > 0) {
+                    double toNext = gap / (fillersToMake+1);
+                    for (int j = 1; j <= fillersToMake; j++) {
+                        fillerNode = new Node(frame.atBearing(bearing1 + toNext * j, radi));
+                        addCommand(new AddCommand(ds, fillerNode));
+                        roundaboutNodes.add(fillerNode);
+                    }
+                }
+            }
+        }
+
+
+        return roundaboutNodes;
+    }
+
+    /**
+     * Get the radius of an existing roundabout
+     * <p>
+     * This method is overloaded with (Node node)
+     * @param roundabout closed way
+     * @return radius in meter of the circle that fits the ring best, or 0 if it is not a ring
+     */
+    public static double getRadius(Way roundabout) {
+        List<Node> ring = getRing(roundabout);
+        if (ring == null) {
+            return 0;
+        }
+        CircleFit fit = fitRing(ring, new LocalFrame(ring.get(0)));
+        return fit == null ? 0 : fit.r;
+    }
+
+    /**
+     * Change the size of an existing roundabout.
+     * <p>
+     * Unlike expanding again, this does not touch the ways around it.
+     * The nodes where other ways join the ring are moved in or out from the
+     * center, the rest of the ring nodes are spread evenly between them.
+     * Filler nodes are added or removed so the gaps fit the new size.
+     *
+     * @param roundabout closed way tagged junction=roundabout
+     * @param radi       new radius in meter
+     * @param maxGap     max gap in radians between nodes, see {@link #getMaxGap(double)}
+     * @return true if the roundabout was resized
+     */
+    public boolean resizeRoundabout(Way roundabout, double radi, double maxGap) {
+        if (!RoundaboutIndex.isRoundabout(roundabout) || !roundabout.isClosed()) {
+            warn(tr("Not a roundabout"));
+            return false;
+        }
+        return runAsOneCommand(roundabout.getDataSet(), tr("Resize roundabout"),
+                () -> {
+                    try (Timer t = ExpansionStats.start(Phase.RESIZE)) {
+                        return resize(roundabout, radi, maxGap);
+                    }
+                });
+    }
+
+    private boolean resize(Way roundabout, double radi, double maxGap) {
+        DataSet ds = roundabout.getDataSet();
+        List<Node> ring = getRing(roundabout);
+        CircleFit fit = ring == null ? null : fitRing(ring, new LocalFrame(ring.get(0)));
+        if (fit == null) {
+            warn(tr("The roundabout is not round enough to be resized"));
+            return false;
+        }
+        int s = ring.size();
+
+        //Do the geometry in a flat plane around the center of the ring
+        LocalFrame frame = new LocalFrame(new LocalFrame(ring.get(0)).toLatLon(fit.cx, fit.cy));
+        double[] x = new double[s];
+        double[] y = new double[s];
+        for (int i = 0; i < s; i++) {
+            x[i] = frame.x(ring.get(i));
+            y[i] = frame.y(ring.get(i));
+        }
+        double direction = getDirection(x, y, 0, s);
+
+        //The nodes that hold the ring to the rest of the map keep their bearing.
+        //The rest are fillers, which can be moved, added or removed freely.
+        boolean[] fixed = new boolean[s];
+        int first = markFixed(ring, 0, s, fixed);
+
+        //The approaches must not end up inside the ring
+        for (int i = 0; i < s; i++) {
+            if (fixed[i] && !keepsClear(ring.get(i), roundabout, frame, radi)) {
+                warn(tr("The roundabout would cover the ways joining it"));
+                return false;
+            }
+        }
+
+        List<Node> roundaboutNodes = new ArrayList<>(s);
+        List<Node> fillers = new ArrayList<>();
+        List<Node> unused = new ArrayList<>();
+        int i = first;
+        do {
+            Node node = ring.get(i);
+            double bearing1 = LocalFrame.bearing(x[i], y[i]);
+            addCommand(new MoveCommand(node, frame.atBearing(bearing1, radi)));
+            roundaboutNodes.add(node);
+
+            //Collect the fillers up to the next fixed node
+            fillers.clear();
+            int next = (i + 1) % s;
+            while (!fixed[next]) {
+                fillers.add(ring.get(next));
+                next = (next + 1) % s;
+            }
+
+            //The gap along the ring, a full circle if there is only one fixed node
+            double gap = (LocalFrame.bearing(x[next], y[next]) - bearing1) * direction;
+            if (gap <= 0) {
+                gap += Math.PI * 2;
+            }
+            int fillersToMake = ChordSpacing.fillers(gap, maxGap);
+            double toNext = gap / (fillersToMake + 1) * direction;
+            for (int j = 1; j <= fillersToMake; j++) {
+                LatLon position = frame.atBearing(bearing1 + toNext * j, radi);
+                Node fillerNode;
+                if (j <= fillers.size()) {
+                    fillerNode = fillers.get(j - 1);
+                    addCommand(new MoveCommand(fillerNode, position));
+                } else {
+                    fillerNode = new Node(position);
+                    addCommand(new AddCommand(ds, fillerNode));
+                }
+                roundaboutNodes.add(fillerNode);
+            }
+            for (int j = fillersToMake; j < fillers.size(); j++) {
+                unused.add(fillers.get(j));
+            }
+            i = next;
+        } while (i != first);
+
+        //Close the ring
+        roundaboutNodes.add(roundaboutNodes.get(0));
+        if (!roundaboutNodes.equals(roundabout.getNodes())) {
+            addCommand(new ChangeNodesCommand(roundabout, roundaboutNodes));
+        }
+        if (!unused.isEmpty()) {
+            addCommand(new DeleteCommand(ds, unused));
+        }
+        return true;
+    }
+
+    /**
+     * Make existing roundabouts round, with the chord error from the preferences.
+     *
+     * @param roundabouts closed ways tagged junction=roundabout, others are skipped
+     * @return the roundabouts that were changed
+     * @see #circularize(Collection, ExpansionParameters)
+     */
+    public List<Way> circularize(Collection<Way> roundabouts) {
+        return circularize(roundabouts, ExpansionParameters.fromPreferences());
+    }
+
+    /**
+     * Make existing roundabouts round.
+     * <p>
+     * A circle is fitted to each ring. The nodes where other ways join the
+     * ring are moved onto the circle, keeping their bearing from its center.
+     * The other ring nodes are spread evenly between them. Where the nodes
+     * are further apart than params allow for the size of the circle, filler
+     * nodes are added. No nodes are removed, and the ways around are not touched.
+     * <p>
+     * A ring that is far from round is not a circle gone a bit off, so it is
+     * left as it is: if the root mean square distance of its nodes from the
+     * circle is more than rex.circularize.max_rms_ratio of the radius, or a
+     * node would move more than rex.circularize.max_move_meter. How many were
+     * left is reported with {@link #warn(String)}.
+     * <p>
+     * The rings are all fitted in one pass over plain coordinate arrays, so
+     * many thousands of roundabouts can be done in one go.
+     *
+     * @param roundabouts closed ways tagged junction=roundabout, others are skipped
+     * @param params      how close the ring nodes need to be, see {@link ExpansionParameters#getMaxGap(double)}
+     * @return the roundabouts that were changed
+     */
+    public List<Way> circularize(Collection<Way> roundabouts, ExpansionParameters params) {
+        List<Way> ways = new ArrayList<>(roundabouts.size());
+        for (Way way : roundabouts) {
+            if (RoundaboutIndex.isRoundabout(way) && way.isClosed()) {
+                ways.add(way);
+            }
+        }
+        List<Way> done = new ArrayList<>();
+        if (ways.isEmpty()) {
+            return done;
+        }
+        runAsOneCommand(ways.get(0).getDataSet(),
+                trn("Make {0} roundabout round", "Make {0} roundabouts round", ways.size(), ways.size()),
+                () -> {
+                    try (Timer t = ExpansionStats.start(Phase.CIRCULARIZE)) {
+                        circularize(ways, params, done);
+                    }
+                    return null;
+                });
+        return done;
+    }
+
+    private void circularize(List<Way> ways, ExpansionParameters params, List<Way> done) {
+        double maxRmsRatio = Config.getPref().getDouble("rex.circularize.max_rms_ratio", 0.1);
+        double maxMove = Config.getPref().getDouble("rex.circularize.max_move_meter", 5);
+
+        //Put all the rings one after another, ring r is from start[r] to start[r + 1]
+        List<Way> rings = new ArrayList<>(ways.size());
+        List<Node> nodes = new ArrayList<>();
+        int[] start = new int[ways.size() + 1];
+        for (Way way : ways) {
+            List<Node> ring = getRing(way);
+            if (ring != null) {
+                rings.add(way);
+                nodes.addAll(ring);
+                start[rings.size()] = nodes.size();
+            }
+        }
+        int total = nodes.size();
+        double[] x = new double[total];
+        double[] y = new double[total];
+        double[] nx = new double[total];
+        double[] ny = new double[total];
+        boolean[] fixed = new boolean[total];
+
+        //Each ring in a flat plane around its first node
+        LocalFrame[] frames = new LocalFrame[rings.size()];
+        for (int r = 0; r < rings.size(); r++) {
+            frames[r] = new LocalFrame(nodes.get(start[r]));
+            for (int i = start[r]; i < start[r + 1]; i++) {
+                x[i] = frames[r].x(nodes.get(i));
+                y[i] = frames[r].y(nodes.get(i));
+            }
+            markFixed(nodes, start[r], start[r + 1], fixed);
+        }
+
+        //Fit the circles and place the nodes on them
+        CircleFit[] fits = new CircleFit[rings.size()];
+        for (int r = 0; r < rings.size(); r++) {
+            fits[r] = CircleFit.fit(x, y, start[r], start[r + 1]);
+            if (fits[r] != null) {
+                spreadOnCircle(x, y, fixed, start[r], start[r + 1], fits[r], nx, ny);
+            }
+        }
+
+        //Move the nodes that are not on the circle already
+        int skipped = 0;
+        for (int r = 0; r < rings.size(); r++) {
+            if (fits[r] == null) {
+                continue;
+            }
+            if (fits[r].rms > maxRmsRatio * fits[r].r || getMaxMove(x, y, nx, ny, start[r], start[r + 1]) > maxMove) {
+                skipped++;
+                continue;
+            }
+            boolean moved = false;
+            for (int i = start[r]; i < start[r + 1]; i++) {
+                double dx = nx[i] - x[i];
+                double dy = ny[i] - y[i];
+                if (dx * dx + dy * dy > MIN_MOVE * MIN_MOVE) {
+                    addCommand(new MoveCommand(nodes.get(i), frames[r].toLatLon(nx[i], ny[i])));
+                    moved = true;
+                }
+            }
+            boolean filled = fillGaps(rings.get(r), nodes, start[r], start[r + 1], nx, ny, fits[r], frames[r],
+                    params.getMaxGap(fits[r].r));
+            if (moved || filled) {
+                done.add(rings.get(r));
+            }
+        }
+        if (skipped > 0) {
+            Logging.debug("REX: {0} of {1} rings are too far from round to be made round", skipped, rings.size());
+            warn(trn("{0} roundabout is too far from round and was left as it is",
+                    "{0} roundabouts are too far from round and were left as they are", skipped, skipped));
+        }
+    }
+
+    /**
+     * @return the longest distance a node of the ring from index from to index to is moved
+     */
+    private static double getMaxMove(double[] x, double[] y, double[] nx, double[] ny, int from, int to) {
+        double max = 0;
+        for (int i = from; i < to; i++) {
+            max = Math.max(max, Math.hypot(nx[i] - x[i], ny[i] - y[i]));
+        }
+        return max;
+    }
+
+    /**
+     * Add filler nodes to a ring placed on its circle, where the nodes are more than maxGap apart
+     * @param way    the ring way
+     * @param nodes  nodes of the rings
+     * @param from   first node of the ring
+     * @param to     end of the ring
+     * @param nx     x of the nodes on the circle
+     * @param ny     y of the nodes on the circle
+     * @param fit    the circle
+     * @param frame  frame of nx and ny
+     * @param maxGap max gap in radians between ring nodes
+     * @return true if any were added
+     */
+    private boolean fillGaps(Way way, List<Node> nodes, int from, int to, double[] nx, double[] ny, CircleFit fit,
+            LocalFrame frame, double maxGap) {
+        double direction = getDirection(nx, ny, from, to);
+        List<Node> newNodes = new ArrayList<>();
+        List<Node> wayNodes = new ArrayList<>(to - from + 1);
+        for (int i = from; i < to; i++) {
+            wayNodes.add(nodes.get(i));
+            int next = i + 1 < to ? i + 1 : from;
+            double bearing1 = LocalFrame.bearing(nx[i] - fit.cx, ny[i] - fit.cy);
+            double gap = (LocalFrame.bearing(nx[next] - fit.cx, ny[next] - fit.cy) - bearing1) * direction;
+            if (gap < 0) {
+                gap += Math.PI * 2;
+            }
+            int fillers = ChordSpacing.fillers(gap, maxGap);
+            double toNext = gap / (fillers + 1) * direction;
+            for (int k = 1; k <= fillers; k++) {
+                Node filler = new Node(frame.toLatLon(fit.cx + fit.r * Math.sin(bearing1 + toNext * k),
+                        fit.cy + fit.r * Math.cos(bearing1 + toNext * k)));
+                newNodes.add(filler);
+                wayNodes.add(filler);
+            }
+        }
+        if (newNodes.isEmpty()) {
+            return false;
+        }
+        //Closed, the first node again
+        wayNodes.add(wayNodes.get(0));
+        addNodes(way.getDataSet(), newNodes);
+        addCommand(new ChangeNodesCommand(way, wayNodes));
+        return true;
+    }
+
+    /**
+     * Place the points of a ring on a circle.
+     * <p>
+     * Fixed points keep their bearing from the center, the others are
+     * spread evenly between them, keeping their order.
+     *
+     * @param x     x of the points
+     * @param y     y of the points
+     * @param fixed which points keep their bearing, at least one in the ring
+     * @param from  first point of the ring
+     * @param to    end of the ring
+     * @param fit   circle to place the points on
+     * @param nx    new x of the points
+     * @param ny    new y of the points
+     */
+    private static void spreadOnCircle(double[] x, double[] y, boolean[] fixed, int from, int to, CircleFit fit,
+            double[] nx, double[] ny) {
+        double direction = getDirection(x, y, from, to);
+        int first = from;
+        while (!fixed[first]) {
+            first++;
+        }
+        int i = first;
+        do {
+            double bearing1 = LocalFrame.bearing(x[i] - fit.cx, y[i] - fit.cy);
+            nx[i] = fit.cx + fit.r * Math.sin(bearing1);
+            ny[i] = fit.cy + fit.r * Math.cos(bearing1);
+
+            //Count the points up to the next fixed one
+            int fillers = 0;
+            int next = i + 1 < to ? i + 1 : from;
+            while (!fixed[next]) {
+                fillers++;
+                next = next + 1 < to ? next + 1 : from;
+            }
+
+            //The gap along the ring, a full circle if there is only one fixed point
+            double gap = (LocalFrame.bearing(x[next] - fit.cx, y[next] - fit.cy) - bearing1) * direction;
+            if (gap <= 0) {
+                gap += Math.PI * 2;
+            }
+            double toNext = gap / (fillers + 1) * direction;
+            int j = i;
+            for (int k = 1; k <= fillers; k++) {
+                j = j + 1 < to ? j + 1 : from;
+                nx[j] = fit.cx + fit.r * Math.sin(bearing1 + toNext * k);
+                ny[j] = fit.cy + fit.r * Math.cos(bearing1 + toNext * k);
+            }
+            i = next;
+        } while (i != first);
+    }
+
+    /**
+     * Find the direction of a ring
+     * @return 1 if bearings grow along the ring, which is then clockwise, -1 if not
+     */
+    private static double getDirection(double[] x, double[] y, int from, int to) {
+        double area = 0;
+        for (int i = from; i < to; i++) {
+            int j = i + 1 < to ? i + 1 : from;
+            area += x[i] * y[j] - x[j] * y[i];
+        }
+        //A clockwise ring has a negative area
+        return area < 0 ? 1 : -1;
+    }
+
+    /**
+     * Mark the nodes of a ring that hold it to the rest of the map.
+     * <p>
+     * These are nodes with tags, nodes used by other ways or relations, and
+     * nodes the ring goes through more than once. The rest are fillers.
+     * If there are none, the first node is marked.
+     *
+     * @param nodes nodes of one or more rings
+     * @param from  first node of the ring
+     * @param to    end of the ring
+     * @param fixed where to mark them
+     * @return index of the first marked node
+     */
+    private static int markFixed(List<Node> nodes, int from, int to, boolean[] fixed) {
+        int first = -1;
+        List<Node> ring = nodes.subList(from, to);
+        for (int i = from; i < to; i++) {
+            Node node = nodes.get(i);
+            fixed[i] = node.hasKeys() || node.getReferrers().size() > 1 || ring.indexOf(node) != i - from;
+            if (fixed[i] && first < 0) {
+                first = i;
+            }
+        }
+        if (first < 0) {
+            //A lone ring, keep the first node where it is
+            first = from;
+            fixed[from] = true;
+        }
+        return first;
+    }
+
+    /**
+     * Get the nodes of a closed way, without the closing node
+     * @return the nodes, or null if the way is too short to be a ring
+     */
+    private static List<Node> getRing(Way way) {
+        if (!way.isClosed() || way.getNodesCount() < 4) {
+            return null;
+        }
+        List<Node> ring = way.getNodes();
+        ring.remove(ring.size() - 1);
+        return ring;
+    }
+
+    /**
+     * Fit a circle to a ring of nodes
+     * @return the circle in frame, or null if the nodes are on a line
+     */
+    private static CircleFit fitRing(List<Node> ring, LocalFrame frame) {
+        int s = ring.size();
+        double[] x = new double[s];
+        double[] y = new double[s];
+        for (int i = 0; i < s; i++) {
+            x[i] = frame.x(ring.get(i));
+            y[i] = frame.y(ring.get(i));
+        }
+        return CircleFit.fit(x, y, s);
+    }
+
+    /**
+     * Check that the ways ending at node stay outside a ring of radius radi
+     */
+    private boolean keepsClear(Node node, Way roundabout, LocalFrame frame, double radi) {
+        for (Way way : topology().getWays(node)) {
+            if (way == roundabout || !way.isFirstLastNode(node) || way.getNodesCount() < 2) {
+                continue;
+            }
+            Node next = way.getNeighbours(node).iterator().next();
+            double dx = frame.x(next);
+            double dy = frame.y(next);
+            if (dx * dx + dy * dy <= radi * radi) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split all ways connected to node, so that node is an end of each of them
+     */
+    private void splitAll(Node node) {
+        splitAll(Collections.singletonList(node));
+    }
+
+    /**
+     * Split all ways connected to nodes, so that the nodes are only at the ends of ways.
+     * <p>
+     * Each way is split once, at all the nodes in it.
+     * A closed way with only one of the nodes in its middle is not split,
+     * but turned around so it starts and ends at that node.
+     * All splits are done as one command.
+     *
+     * @param nodes nodes to split at
+     */
+    private void splitAll(Collection<Node> nodes) {
+        //Find where to split each way, in one pass over the nodes
+        Set<Node> nodeSet = new LinkedHashSet<>(nodes);
+        Map<Way, List<Node>> splitNodes = new LinkedHashMap<>();
+        JunctionTopology junction = topology();
+        for (Node node : nodeSet) {
+            for (Way way : junction.getWays(node)) {
+                if (!way.isFirstLastNode(node)) {
+                    splitNodes.computeIfAbsent(way, k -> new ArrayList<>()).add(node);
+                }
+            }
+        }
+        split(nodeSet, splitNodes);
+    }
+
+    /**
+     * Split all ways at the nodes of the plans, as {@link #splitAll(Collection)}
+     * @param plans   plans of the junctions to split at
+     * @param current which plans still hold, the ways to split are looked up again for the others
+     */
+    private void splitAll(List<JunctionPlan> plans, boolean[] current) {
+        Set<Node> nodeSet = new LinkedHashSet<>();
+        Map<Way, List<Node>> splitNodes = new LinkedHashMap<>();
+        JunctionTopology junction = topology();
+        for (int i = 0; i < current.length; i++) {
+            Node node = plans.get(i).node;
+            if (!nodeSet.add(node)) {
+                continue;
+            }
+            List<Way> ways = current[i] ? plans.get(i).splitWays : junction.getWays(node);
+            for (Way way : ways) {
+                if (!way.isFirstLastNode(node)) {
+                    splitNodes.computeIfAbsent(way, k -> new ArrayList<>()).add(node);
+                }
+            }
+        }
+        split(nodeSet, splitNodes);
+    }
+
+    /**
+     * Split ways where the nodes are in their middle
+     * @param nodeSet    all nodes split at
+     * @param splitNodes the nodes to split each way at
+     */
+    private void split(Set<Node> nodeSet, Map<Way, List<Node>> splitNodes) {
+        if (splitNodes.isEmpty()) {
+            return;
+        }
+
+        group(nodeSet.iterator().next().getDataSet(), tr("Split ways"), () -> {
+            for (Map.Entry<Way, List<Node>> entry : splitNodes.entrySet()) {
+                Way from = entry.getKey();
+                List<Node> at = entry.getValue();
+                if (from.isClosed()) {
+                    if (nodeSet.contains(from.firstNode())) {
+                        //Keep the closing node as split point, else the split merges across it
+                        at.add(from.firstNode());
+                    } else if (at.size() == 1) {
+                        //Only one node, turn the way so it starts and ends there
+                        addCommand(new ChangeNodesCommand(from, rotate(from, at.get(0))));
+                        continue;
+                    }
+                }
+                //split way where nodes are in the middle.
+                //Made one at a time, as relations may be changed by each of them.
+                SplitWayCommand split = SplitWayCommand.split(from, at, Collections.<OsmPrimitive>emptyList());
+                if (split != null) {
+                    addCommand(split);
+                } else {
+                    warn(tr("Could not split way {0}", from.getDisplayName(DefaultNameFormatter.getInstance())));
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the nodes of closed way, turned to start and end at node
+     */
+    private static List<Node> rotate(Way closed, Node node) {
+        List<Node> nodes = closed.getNodes();
+        //Last node is the same as the first
+        nodes.remove(nodes.size() - 1);
+        Collections.rotate(nodes, -nodes.indexOf(node));
+        nodes.add(node);
+        return nodes;
+    }
+
+    /**
+     * Unglue all ways using the selectedNode and return the set of new nodes
+     * <p>
+     * Each end of a way at selectedNode gets a node of its own,
+     * except one, which keeps selectedNode.
+     *
+     * @param Node selectedNode The original node
+     *
+     * @return The list of new nodes
+     */
+    private List<Node> unglueWays(Node selectedNode) {
+        List<Node> newNodes = new LinkedList<>();
+
+        Way wayWithSelectedNode = null;
+        LinkedList<Way> parentWays = new LinkedList<>();
+        JunctionTopology junction = topology();
+        for (Way w : junction.getWays(selectedNode)) {
+            if (wayWithSelectedNode == null && !w.isFirstLastNode(selectedNode)) {
+                Logging.debug("REX: wayWithSelected");
+                wayWithSelectedNode = w;
+            } else {
+                parentWays.add(w);
+            }
+        }
+        //Why?
+        if (wayWithSelectedNode == null && !parentWays.isEmpty()) {
+            wayWithSelectedNode = parentWays.removeFirst();
+        }
+        //Work out the new node lists first
+        Map<Way, List<Node>> wayNodes = new LinkedHashMap<>();
+        for (Way w : parentWays) {
+            wayNodes.put(w, modifyWay(selectedNode, w, newNodes, false));
+        }
+        //A way starting and ending at the node keeps it at one end only
+        if (wayWithSelectedNode != null && wayWithSelectedNode.isClosed() && wayWithSelectedNode.firstNode() == selectedNode) {
+            wayNodes.put(wayWithSelectedNode, modifyWay(selectedNode, wayWithSelectedNode, newNodes, true));
+        }
+        //Then actually unglue each parent way
+        addNodes(selectedNode.getDataSet(), newNodes);
+        newNodes.forEach(junction::track);
+        wayNodes.forEach((w, nodes) -> addCommand(new ChangeNodesCommand(w, nodes)));
+
+        //Add the original node to newNodes to be selected
+        newNodes.add(selectedNode);
+
+        return newNodes;
+    }
+
+    /**
+     * Sub method of unglueWays.
+     * <p>
+     * Makes the node list of originalWay,
+     * with each occurrence of originalNode replaced with a duplicate of it.
+     * Only the node list is made, not a copy of the way, as that is all
+     * the undo stack needs to keep.
+     * <p>
+     * We assume that OrginalNode is in the way.
+     * <p>
+     * We also put the new nodes into newNodes. They are not added to the
+     * data set, see {@link #addNodes(DataSet, Collection)}.
+     *
+     * @param keepFirst true to leave originalNode as the first node
+     * @return the new node list of originalWay
+     */
+    private static List<Node> modifyWay(Node originalNode, Way originalWay, List<Node> newNodes, boolean keepFirst) {
+        List<Node> nn = new ArrayList<>(originalWay.getNodesCount());
+        for (Node pushNode : originalWay.getNodes()) {
+            if (originalNode == pushNode && !(keepFirst && nn.isEmpty())) {
+                // clone the node for the way
+                pushNode = new Node(originalNode, true /* clear OSM ID */);
+                newNodes.add(pushNode);
+            }
+            nn.add(pushNode);
+        }
+        return nn;
+    }
+
+    /**
+     * Add new nodes to the data set as one command
+     *
+     * @param ds    data set
+     * @param nodes nodes not yet in any data set
+     */
+    private void addNodes(DataSet ds, Collection<Node> nodes) {
+        group(ds, tr("Add nodes"), () -> {
+            for (Node n : nodes) {
+                addCommand(new AddCommand(ds, n));
+            }
+        });
+    }
+
+    /**
+     * Sort nodes angular in relation to center
+     * <p>
+     * The bearing of each node is computed once and used as sort key.
+     *
+     * @param nodes nodes
+     * @param center center
+     * @param clockwise clockwise?
+     */
+    public static void angularSort(List<Node> nodes, ILatLon center, boolean clockwise) {
+        LocalFrame frame = new LocalFrame(center);
+        int s = nodes.size();
+        Node[] sorted = nodes.toArray(new Node[s]);
+        double[] bearings = new double[s];
+        for (int i = 0; i < s; i++) {
+            bearings[i] = frame.bearing(sorted[i]);
+        }
+        LocalFrame.sortByKey(bearings, sorted);
+        for (int i = 0; i < s; i++) {
+            nodes.set(clockwise ? i : s - 1 - i, sorted[i]);
+        }
+    }
+
+    /**
+     * A comparator that may be used to sort Ways by beefyness
+     * relative to node.
+     * The most prominent way comes first.
+     * <p>
+     * Ways are ranked by their highway tag, in the order given by the
+     * preference rex.highway_ranking. For ways of the same class,
+     * a way passing through the node comes before a way ending in it.
+     * The rank of each way is only computed once.
+     */
+    public static class HighComp implements Comparator<Way> {
+
+        /**
+         * Highway classes from most to least prominent
+         */
+        static final List<String> DEFAULT_RANKING = Collections.unmodifiableList(Arrays.asList(
+                "motorway",
+                "motorway_link",
+                "trunk",
+                "trunk_link",
+                "primary",
+                "primary_link",
+                "secondary",
+                "secondary_link",
+                "tertiary",
+                "unclassified",
+                "residential",
+                "service",
+                "track",
+                "cycleway",
+                "footway",
+                "path",
+                "road",
+                "construction"
+                ));
+
+        /**
+         * The ranking the table was built from
+         */
+        private static List<String> ranking;
+
+        /**
+         * Rank of each highway class, higher is more prominent
+         */
+        private static Map<String, Integer> rankTable;
+
+        /**
+         * Node the ways are compared at
+         */
+        private final Node reference;
+
+        /**
+         * Ranks already computed
+         */
+        private final Map<Way, Integer> ranks = new HashMap<>();
+
+        /**
+         * Constructor with center specified
+         */
+        public HighComp(Node reference) {
+            this.reference = reference;
+        }
+
+        /**
+         * Get the table of highway class ranks, rebuilt only if the preference has changed
+         */
+        private static synchronized Map<String, Integer> getRankTable() {
+            List<String> pref = Config.getPref().getList("rex.highway_ranking", DEFAULT_RANKING);
+            if (rankTable == null || !pref.equals(ranking)) {
+                Map<String, Integer> table = new HashMap<>();
+                int s = pref.size();
+                for (int i = 0; i < s; i++) {
+                    //first in list gets the highest rank, not found gets 0
+                    table.putIfAbsent(pref.get(i), s - i);
+                }
+                ranking = pref;
+                rankTable = table;
+            }
+            return rankTable;
+        }
+
+        /**
+         * Compute the rank of way
+         * @param way way
+         * @return the rank, higher is more prominent
+         */
+        public int rank(Way way) {
+            Integer rank = ranks.get(way);
+            if (rank == null) {
+                Integer classRank = getRankTable().get(way.get("highway"));
+                int r = classRank == null ? 0 : classRank;
+                //Through ways before ways ending at the reference node
+                r = r * 2;
+                if (reference != null && way.containsNode(reference) && !way.isFirstLastNode(reference)) {
+                    r++;
+                }
+                rank = r;
+                ranks.put(way, rank);
+            }
+            return rank;
+        }
+
+        @Override
+        public int compare(Way a, Way b) {
+            return Integer.compare(rank(b), rank(a));
+        }
+    }
+
+    /**
+     * Move a node it distance meter in the heading of
+     * the next node in the way it is the last node in.
+     *
+     * @param node     Node to be moved
+     * @param distance Distance to move node in meter
+     */
+    public boolean moveWayEndNodeTowardsNextNode(Node node, double distance) {
+        //some verification:
+        List<Way> referedWays = topology().getWays(node);
+
+        //node must be member of exactly one way
+        if (referedWays.size() != 1) {
+            //pri("node is not member of exactly one way");
+            return false;
+        } else {
+            return moveWayEndNodeTowardsNextNode(node, distance, referedWays.get(0));
+        }
+    }
+
+    /**
+     * Move a node it distance meter in the heading of
+     * the next node in the way it is the last node in.
+     *
+     * @param node     Node to be moved
+     * @param distance Distance to move node in meter
+     * @param way      Way
+     */
+    public boolean moveWayEndNodeTowardsNextNode(Node node, double distance, Way way) {
+        return moveWayEndNodeTowardsNextNode(node, distance, way, new LocalFrame(node));
+    }
+
+    /**
+     * Move a node, doing the maths in the given frame
+     */
+    private boolean moveWayEndNodeTowardsNextNode(Node node, double distance, LocalFrame frame) {
+        List<Way> referedWays = topology().getWays(node);
+        return referedWays.size() == 1 && moveWayEndNodeTowardsNextNode(node, distance, referedWays.get(0), frame);
+    }
+
+    private boolean moveWayEndNodeTowardsNextNode(Node node, double distance, Way way, LocalFrame frame) {
+        //Node must be first or last node in way
+        if (!way.isFirstLastNode(node)) {
+            //pri("not first or last node in way");
+            return false;
+        }
+
+        //Way must be at least two nodes long
+        if (way.getNodesCount() < 2) {
+            //pri("fewer than two nodes");
+            return false;
+        }
+
+        //Move the node towards the next node
+        Node ajacentNode = way.getNeighbours(node).iterator().next();
+        addCommand(new MoveCommand(node, frame.towards(node, ajacentNode, distance)));
+
+        return true;
+    }
+
+    /**
+     * Output a warning message
+     *
+     * @param message Message
+     */
+    protected void warn(String message) {
+        Logging.warn(message);
+    }
+
+    /**
+     * Find the nodes of a roundabout where flares can be made
+     * <p>
+     * These are the nodes where a way that is not oneway ends.
+     *
+     * @param roundabout closed way tagged junction=roundabout
+     * @return the nodes, empty if way is not a roundabout
+     */
+    public static List<Node> findFlareCandidates(Way roundabout) {
+        if (!roundabout.isClosed() || !"roundabout".equals(roundabout.get("junction"))) {
+            return new ArrayList<>();
+        }
+        //A set, so the closing node and nodes with several approaches are only listed once
+        Set<Node> candidates = new LinkedHashSet<>();
+        for (Node node : roundabout.getNodes()) {
+            for (Way hmmway : Utils.filteredCollection(node.getReferrers(), Way.class)) {
+                if (hmmway.isFirstLastNode(node)
+                        && hmmway != roundabout
+                        && !"yes".equals(hmmway.get("oneway"))
+                        ) {
+                    candidates.add(node);
+                }
+            }
+        }
+        return new ArrayList<>(candidates);
+    }
+
+    /**
+     * Make flares.
+     * <p>
+     *       split way at the next node
+     *       determine direction of the connected roundabout way
+     *       along the roundabout, create a new node half the distance to the next node in both directions
+     *       those two nodes become the end nodes of the two node way according to direction
+     *       tag the flare(oneway=yes)
+     *       split the flare at the outer node
+     * <p>
+     * If the nodes are not all on one way, they are grouped by the
+     * roundabout they are on, and flares are made on each of them.
+     *
+     * @param nodes nodes on a roundabout where flares are wanted
+     * @return the way the flares were made on, the first of them if several, or null if none were made
+     */
+    public Way makeFlares(Collection<Node> nodes) {
+        if (nodes.isEmpty()) {
+            return null;
+        }
+        List<Node> selectedNodes = new ArrayList<>(nodes);
+        return runAsOneCommand(selectedNodes.get(0).getDataSet(), tr("Make flares"), () -> {
+            try (Timer t = ExpansionStats.start(Phase.FLARES)) {
+                JunctionTopology junction = topology();
+                Set<Way> commonWays = findCommonWays(selectedNodes, junction);
+                if (commonWays.size() == 1) {
+                    Way tWay = commonWays.iterator().next();
+                    makeFlaresOn(tWay, selectedNodes, junction);
+                    return tWay;
+                }
+                //No one common way, take each roundabout in turn
+                Map<Way, List<Node>> nodesByRoundabout = new LinkedHashMap<>();
+                for (Node node : selectedNodes) {
+                    Way roundabout = findRoundabout(node, junction);
+                    if (roundabout != null) {
+                        nodesByRoundabout.computeIfAbsent(roundabout, k -> new ArrayList<>()).add(node);
+                    }
+                }
+                nodesByRoundabout.forEach((tWay, ringNodes) -> makeFlaresOn(tWay, ringNodes, junction));
+                return nodesByRoundabout.isEmpty() ? null : nodesByRoundabout.keySet().iterator().next();
+            }
+        });
+    }
+
+    /**
+     * Make flares on roundabouts, at every way ending on them that is not oneway
+     * <p>
+     * All the flares are made as one command.
+     *
+     * @param roundabouts closed ways tagged junction=roundabout, other ways are skipped
+     * @return the roundabouts flares were made on
+     * @see #findFlareCandidates(Way)
+     */
+    public List<Way> makeFlaresOnRoundabouts(Collection<Way> roundabouts) {
+        List<Way> done = new ArrayList<>();
+        if (roundabouts.isEmpty()) {
+            return done;
+        }
+        return runAsOneCommand(roundabouts.iterator().next().getDataSet(),
+                trn("Make flares on {0} roundabout", "Make flares on {0} roundabouts", roundabouts.size(), roundabouts.size()),
+                () -> {
+                    try (Timer t = ExpansionStats.start(Phase.FLARES)) {
+                        JunctionTopology junction = topology();
+                        for (Way tWay : roundabouts) {
+                            if (!tWay.isUsable()) {
+                                continue;
+                            }
+                            List<Node> candidates = findFlareCandidates(tWay);
+                            if (!candidates.isEmpty()) {
+                                makeFlaresOn(tWay, candidates, junction);
+                                done.add(tWay);
+                            }
+                        }
+                    }
+                    return done;
+                });
+    }
+
+    /**
+     * Make flares on tWay at each of the nodes where one other way ends
+     */
+    private void makeFlaresOn(Way tWay, List<Node> nodes, JunctionTopology junction) {
+        //The ring does not change while making flares, so look it up once
+        List<Node> ringNodes = tWay.getNodes();
+        Map<Node, Integer> positions = junction.getPositions(tWay);
+        //A node listed twice would get a second flare on top of the first
+        for (Node cNode : new LinkedHashSet<>(nodes)) {
+            List<Way> iWayCandidates = junction.getWays(cNode);
+            if (iWayCandidates.size() == 2) {
+                for (Way iWay : iWayCandidates) {
+                    if (iWay != tWay && !"roundabout_flare".equals(iWay.get("oneway_type"))) {
+                        makeFlare(iWay, tWay, cNode, ringNodes, positions);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the one closed junction=roundabout way node is on
+     * @return the way, or null if there is none or more than one
+     */
+    private static Way findRoundabout(Node node, JunctionTopology junction) {
+        Way found = null;
+        for (Way way : junction.getWays(node)) {
+            if (way.isClosed() && "roundabout".equals(way.get("junction"))) {
+                if (found != null) {
+                    return null;
+                }
+                found = way;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find a set of ways that all nodes are a member of
+     */
+    private static Set<Way> findCommonWays(List<Node> nodes, JunctionTopology junction) {
+        Set<Way> ret = new HashSet<>();
+
+        //We examine the referring ways of one of nodes
+        Node n = nodes.get(0);
+        for (Way referredWay : junction.getWays(n)) {
+            //if all nodes are a member
+            if (junction.getPositions(referredWay).keySet().containsAll(nodes)) {
+                ret.add(referredWay);
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * @param iWay  incoming way
+     * @param tWay  across way
+     * @param cNode common node
+     *
+     * @return boolean Success
+     */
+    public boolean makeFlare(Way iWay, Way tWay, Node cNode) {
+        return makeFlare(iWay, tWay, cNode, tWay.getNodes(), topology().getPositions(tWay));
+    }
+
+    /**
+     * Make a flare, with the nodes of tWay and their positions already looked up
+     */
+    private boolean makeFlare(Way iWay, Way tWay, Node cNode, List<Node> ringNodes, Map<Node, Integer> positions) {
+        //pri("making flare on "+cNode);
+        int flareLength = 6; //meter
+        int direction = -1; //One arm of the flare will be connected to the next node
+
+        Integer cPos = positions.get(cNode);
+        if (iWay.isFirstLastNode(cNode) && cPos != null
+                //iWay must be >1 tWay > 2
+                ) {
+            //Carry on
+        } else {
+            //cNode is not common for iWay and tWay
+            return false;
+        }
+
+        //Unglue cNode from tWay
+        List<Node> a = new ArrayList<>(1);
+        List<Node> iWayNodes = modifyWay(cNode, iWay, a, false);
+        addNodes(iWay.getDataSet(), a);
+        a.forEach(topology()::track);
+        addCommand(new ChangeNodesCommand(iWay, iWayNodes));
+        Node iWayNewNode = a.get(0);
+
+        //Move iWayNewNode towards ajacent node in iWay
+        if (!moveWayEndNodeTowardsNextNode(iWayNewNode, flareLength, iWay)) return false;
+
+        //Find relevant nodes for flare
+        Node fs = iWayNewNode;
+        Node fn1 = cNode;
+
+        //Find the next node in tWay
+        int newPos = cPos + direction;
+        if (tWay.isClosed()) {
+            //Closed
+            //  0 1 2 3 4  0=4
+            if (newPos < 0) newPos += tWay.getRealNodesCount();
+            if (newPos >= tWay.getNodesCount()) newPos = 0;
+        } else {
+            //Open
+            // 0 1 2 3
+            if (newPos < 0) newPos += tWay.getRealNodesCount();
+            if (newPos >= tWay.getNodesCount()) newPos = 0;
+        }
+        Node fn2 = ringNodes.get(newPos);
+
+        //Create flare ways
+        Way flareWay1 = new Way();
+        Way flareWay2 = new Way();
+
+        //add the nodes to the way
+        flareWay1.addNode(fs);
+        flareWay1.addNode(fn1);
+
+        flareWay2.addNode(fn2);
+        flareWay2.addNode(fs);
+
+        //Copy tagging from iWay
+        Map<String, String> tagsToCopy = iWay.getKeys();
+        flareWay1.setKeys(tagsToCopy);
+        flareWay2.setKeys(tagsToCopy);
+
+        flareWay1.put("oneway", "yes");
+        flareWay2.put("oneway", "yes");
+
+        flareWay1.put("oneway_type", "roundabout_flare");
+        flareWay2.put("oneway_type", "roundabout_flare");
+
+        //Add them to osm
+        DataSet ds = tWay.getDataSet();
+        addCommand(new AddCommand(ds, flareWay1));
+        addCommand(new AddCommand(ds, flareWay2));
+
+        return true;
+    } //end method makeFlare
+} //end class RoundaboutExpander
+
+//EOF
@@ -1,14 +1,14 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.plugins.rex;
 
-import javax.swing.JMenuItem;
-
+import org.openstreetmap.josm.data.validation.OsmValidator;
 import org.openstreetmap.josm.gui.MainApplication;
-import org.openstreetmap.josm.gui.MainMenu;
 import org.openstreetmap.josm.gui.MapFrame;
 import org.openstreetmap.josm.plugins.Plugin;
 import org.openstreetmap.josm.plugins.PluginInformation;
-import org.openstreetmap.josm.plugins.rex.actions.TagRoundaboutAction;
+import org.openstreetmap.josm.plugins.rex.actions.RexMenu;
+import org.openstreetmap.josm.plugins.rex.validation.RoundaboutTest;
+import org.openstreetmap.josm.tools.Logging;
 
 /**
  * This is the main class for the rex plugin.
@@ -16,11 +16,29 @@ import org.openstreetmap.josm.plugins.rex.actions.TagRoundaboutAction;
  */
 public class RoundaboutExpanderPlugin extends Plugin {
 
-    JMenuItem roundaboutTag;
+    /**
+     * Service for other plugins and scripts
+     */
+    private static final RoundaboutExpanderService SERVICE = new RoundaboutExpanderService();
+
+    RexMenu menu;
 
     public RoundaboutExpanderPlugin(PluginInformation info) {
         super(info);
-        roundaboutTag = MainMenu.add(MainApplication.getMenu().moreToolsMenu, new TagRoundaboutAction());
+        long start = System.nanoTime();
+        //The actions are made when the menu is first opened
+        menu = new RexMenu(MainApplication.getMenu().moreToolsMenu);
+        OsmValidator.addTest(RoundaboutTest.class);
+        Logging.debug("REX: plugin started in {0} ms", (System.nanoTime() - start) / 1e6);
+    }
+
+    /**
+     * Get the service other plugins and scripts can use to expand roundabouts
+     * without going through the user interface.
+     * @return the service
+     */
+    public static RoundaboutExpanderService getService() {
+        return SERVICE;
     }
 
     /**
@@ -28,7 +46,6 @@ public class RoundaboutExpanderPlugin extends Plugin {
      */
     @Override
     public void mapFrameInitialized(MapFrame oldFrame, MapFrame newFrame) {
-        boolean enabled = newFrame != null;
-        roundaboutTag.setEnabled(enabled);
+        menu.setEnabled(newFrame != null);
     }
 }
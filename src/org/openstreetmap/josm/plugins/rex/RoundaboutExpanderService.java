@@ -0,0 +1,186 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+import static org.openstreetmap.josm.tools.I18n.trn;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+
+/**
+ * Roundabout Expander for other plugins and scripts.
+ * <p>
+ * Each method works on the data set it is given, which need not be the
+ * active layer, and returns a command for the changes without running it.
+ * When a method returns, the data is as it was. The caller decides what to
+ * do with the command, e.g. add it to the undo stack or execute it.
+ * <p>
+ * The service keeps no state, so it may be used from several threads,
+ * as long as each data set is only worked on by one thread at a time.
+ * Get the instance with {@link RoundaboutExpanderPlugin#getService()},
+ * or make one.
+ *
+ * @author Gorm
+ */
+public class RoundaboutExpanderService {
+
+    /**
+     * Tag nodes as mini roundabouts and closed ways as roundabouts,
+     * with the diameter from the preferences
+     * @param ds      data set the targets are in
+     * @param targets nodes and closed ways, anything else is skipped
+     * @return the command, or null if there is nothing to do
+     */
+    public Command tag(DataSet ds, Collection<? extends OsmPrimitive> targets) {
+        return tag(ds, targets, ExpansionParameters.fromPreferences());
+    }
+
+    /**
+     * Tag nodes as mini roundabouts and closed ways as roundabouts
+     * <p>
+     * Nodes get the diameter of params, or the one from the preferences if
+     * it is worked out for each node. The direction and the flares are not
+     * tagged, they are only decided on when the node is expanded.
+     * @param ds      data set the targets are in
+     * @param targets nodes and closed ways, anything else is skipped
+     * @param params  the diameter to tag the nodes with
+     * @return the command, or null if there is nothing to do
+     */
+    public Command tag(DataSet ds, Collection<? extends OsmPrimitive> targets, ExpansionParameters params) {
+        int diameter = (int) Math.round(params.getDiameter());
+        return record(ds, () -> tr("Tag roundabouts"), expander -> {
+            for (OsmPrimitive p : targets) {
+                if (!p.isUsable() || p.getDataSet() != ds) {
+                    continue;
+                }
+                if (p instanceof Node) {
+                    if (diameter > 0) {
+                        expander.tagAsRoundabout((Node) p, diameter);
+                    } else {
+                        expander.tagAsRoundabout((Node) p);
+                    }
+                } else if (p instanceof Way && ((Way) p).isClosed()) {
+                    expander.tagAsRoundabout((Way) p);
+                }
+            }
+        });
+    }
+
+    /**
+     * Expand mini roundabouts to roundabouts
+     * @param ds     data set the nodes are in
+     * @param nodes  mini roundabout nodes, other nodes are skipped
+     * @param params how to expand them
+     * @return the command, or null if there is nothing to do
+     */
+    public Command expand(DataSet ds, Collection<Node> nodes, ExpansionParameters params) {
+        List<Node> inDataSet = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node.getDataSet() == ds) {
+                inDataSet.add(node);
+            }
+        }
+        return record(ds,
+                () -> trn("Expand {0} roundabout", "Expand {0} roundabouts", inDataSet.size(), inDataSet.size()),
+                expander -> expander.expandAll(ds, inDataSet, params, NullProgressMonitor.INSTANCE));
+    }
+
+    /**
+     * Make flares on roundabouts, at every way ending on them that is not oneway
+     * @param ds          data set the roundabouts are in
+     * @param roundabouts closed ways tagged junction=roundabout
+     * @return the command, or null if there is nothing to do
+     * @see RoundaboutExpander#findFlareCandidates(Way)
+     */
+    public Command makeFlares(DataSet ds, Collection<Way> roundabouts) {
+        List<Way> inDataSet = new ArrayList<>(roundabouts.size());
+        for (Way way : roundabouts) {
+            if (way.getDataSet() == ds) {
+                inDataSet.add(way);
+            }
+        }
+        return record(ds, () -> tr("Make flares"), expander -> expander.makeFlaresOnRoundabouts(inDataSet));
+    }
+
+    /**
+     * Change the size of existing roundabouts, keeping the ways around them
+     * @param ds          data set the roundabouts are in
+     * @param roundabouts closed ways tagged junction=roundabout
+     * @param diameter    new diameter in meter
+     * @param params      how close the ring nodes need to be, see {@link ExpansionParameters#getMaxGap(double)}
+     * @return the command, or null if there is nothing to do
+     * @see RoundaboutExpander#resizeRoundabout(Way, double, double)
+     */
+    public Command resize(DataSet ds, Collection<Way> roundabouts, double diameter, ExpansionParameters params) {
+        double radius = diameter / 2;
+        double maxGap = params.getMaxGap(radius);
+        int[] resized = {0};
+        return record(ds, () -> trn("Resize {0} roundabout", "Resize {0} roundabouts", resized[0], resized[0]),
+                expander -> {
+                    for (Way way : roundabouts) {
+                        if (way.getDataSet() == ds && expander.resizeRoundabout(way, radius, maxGap)) {
+                            resized[0]++;
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Make existing roundabouts round, keeping the ways around them
+     * @param ds          data set the roundabouts are in
+     * @param roundabouts closed ways tagged junction=roundabout
+     * @param params      how close the ring nodes need to be, see {@link ExpansionParameters#getMaxGap(double)}
+     * @return the command, or null if there is nothing to do
+     * @see RoundaboutExpander#circularize(Collection, ExpansionParameters)
+     */
+    public Command circularize(DataSet ds, Collection<Way> roundabouts, ExpansionParameters params) {
+        List<Way> inDataSet = new ArrayList<>(roundabouts.size());
+        for (Way way : roundabouts) {
+            if (way.getDataSet() == ds) {
+                inDataSet.add(way);
+            }
+        }
+        return record(ds, () -> tr("Make roundabouts round"), expander -> expander.circularize(inDataSet, params));
+    }
+
+    /**
+     * Move way end nodes along their way
+     * @param ds       data set the nodes are in
+     * @param nodes    nodes at the end of exactly one way
+     * @param distance distance to move them in meter
+     * @return the command, or null if there is nothing to do
+     */
+    public Command moveWayEnds(DataSet ds, Collection<Node> nodes, double distance) {
+        return record(ds, () -> tr("Move way ends"), expander -> {
+            for (Node node : nodes) {
+                if (node.isUsable() && node.getDataSet() == ds) {
+                    expander.moveWayEndNodeTowardsNextNode(node, distance);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run work with a new expander, catching the one command it makes.
+     * The name is asked for when the work is done.
+     */
+    private static Command record(DataSet ds, Supplier<String> name, Consumer<RoundaboutExpander> work) {
+        List<Command> commands = new ArrayList<>(1);
+        RoundaboutExpander expander = new RoundaboutExpander(commands::add);
+        expander.runAsOneCommand(ds, name, () -> {
+            work.accept(expander);
+            return null;
+        });
+        return commands.isEmpty() ? null : commands.get(0);
+    }
+}
@@ -0,0 +1,273 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+
+/**
+ * Keeps track of the roundabouts in a data set, their approach ways
+ * and the nodes where flares can be made.
+ * <p>
+ * The set of roundabouts is built once and then kept current as the data
+ * changes. Approaches and flare candidates are found when first asked for,
+ * and forgotten again when something around the roundabout changes.
+ * Call {@link #destroy()} when the index is no longer needed.
+ *
+ * @author Gorm
+ */
+public class RoundaboutIndex implements DataSetListener {
+
+    /**
+     * What we know about one roundabout
+     */
+    private static final class Entry {
+        /** Ways ending on the roundabout */
+        final Set<Way> approaches = new HashSet<>();
+        /** Nodes where flares can be made */
+        final List<Node> flareCandidates = new ArrayList<>();
+    }
+
+    private final DataSet ds;
+
+    /**
+     * All ways tagged junction=roundabout, null until first needed
+     */
+    private Set<Way> roundabouts;
+
+    /**
+     * Known approaches and flare candidates for each roundabout
+     */
+    private final Map<Way, Entry> entries = new HashMap<>();
+
+    /**
+     * The roundabouts each approach way is listed for
+     */
+    private final Map<Way, Set<Way>> roundaboutsByApproach = new HashMap<>();
+
+    /**
+     * Make an index for ds, and start listening to it
+     * @param ds data set
+     */
+    public RoundaboutIndex(DataSet ds) {
+        this.ds = ds;
+        ds.addDataSetListener(this);
+    }
+
+    /**
+     * Stop listening to the data set
+     */
+    public void destroy() {
+        ds.removeDataSetListener(this);
+    }
+
+    /**
+     * @return the data set this is an index of
+     */
+    public DataSet getDataSet() {
+        return ds;
+    }
+
+    /**
+     * Check if way is tagged as a roundabout
+     * @param way way
+     * @return true if way is junction=roundabout
+     */
+    public static boolean isRoundabout(Way way) {
+        return way.isUsable() && "roundabout".equals(way.get("junction"));
+    }
+
+    /**
+     * @return all usable ways tagged junction=roundabout
+     */
+    public synchronized Set<Way> getRoundabouts() {
+        if (roundabouts == null) {
+            roundabouts = new HashSet<>();
+            for (Way way : ds.getWays()) {
+                if (isRoundabout(way)) {
+                    roundabouts.add(way);
+                }
+            }
+        }
+        return Collections.unmodifiableSet(roundabouts);
+    }
+
+    /**
+     * Get the nodes of a roundabout where flares can be made
+     * <p>
+     * Gives the same as {@link RoundaboutExpander#findFlareCandidates(Way)},
+     * but only looks it up again if something changed.
+     *
+     * @param roundabout roundabout way
+     * @return the nodes, empty if way is not a closed roundabout
+     */
+    public synchronized List<Node> getFlareCandidates(Way roundabout) {
+        return Collections.unmodifiableList(getEntry(roundabout).flareCandidates);
+    }
+
+    private Entry getEntry(Way roundabout) {
+        Entry entry = entries.get(roundabout);
+        if (entry == null) {
+            entry = new Entry();
+            if (roundabout.isClosed() && isRoundabout(roundabout)) {
+                //Without the closing node, it would be listed twice
+                List<Node> ring = roundabout.getNodes();
+                ring.remove(ring.size() - 1);
+                for (Node node : ring) {
+                    for (OsmPrimitive referrer : node.getReferrers()) {
+                        if (referrer instanceof Way && referrer != roundabout && ((Way) referrer).isFirstLastNode(node)) {
+                            Way approach = (Way) referrer;
+                            entry.approaches.add(approach);
+                            roundaboutsByApproach.computeIfAbsent(approach, k -> new HashSet<>()).add(roundabout);
+                            if (!"yes".equals(approach.get("oneway"))
+                                    && (entry.flareCandidates.isEmpty()
+                                            || entry.flareCandidates.get(entry.flareCandidates.size() - 1) != node)) {
+                                entry.flareCandidates.add(node);
+                            }
+                        }
+                    }
+                }
+            }
+            entries.put(roundabout, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Forget what we know about a roundabout
+     */
+    private void invalidate(Way roundabout) {
+        Entry entry = entries.remove(roundabout);
+        if (entry != null) {
+            for (Way approach : entry.approaches) {
+                Set<Way> set = roundaboutsByApproach.get(approach);
+                if (set != null) {
+                    set.remove(roundabout);
+                    if (set.isEmpty()) {
+                        roundaboutsByApproach.remove(approach);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget about all roundabouts at node
+     */
+    private void invalidateAt(Node node) {
+        for (OsmPrimitive referrer : node.getReferrers()) {
+            if (referrer instanceof Way && entries.containsKey(referrer)) {
+                invalidate((Way) referrer);
+            }
+        }
+    }
+
+    /**
+     * Update the index for a changed primitive
+     */
+    private void changed(OsmPrimitive primitive) {
+        if (primitive instanceof Node) {
+            invalidateAt((Node) primitive);
+        } else if (primitive instanceof Way) {
+            Way way = (Way) primitive;
+            if (roundabouts != null) {
+                if (isRoundabout(way) && ds == way.getDataSet()) {
+                    roundabouts.add(way);
+                } else {
+                    roundabouts.remove(way);
+                }
+            }
+            invalidate(way);
+            //Roundabouts it used to end on
+            Set<Way> old = roundaboutsByApproach.remove(way);
+            if (old != null) {
+                for (Way roundabout : new ArrayList<>(old)) {
+                    invalidate(roundabout);
+                }
+            }
+            //Roundabouts it ends on now
+            for (Node node : way.getNodes()) {
+                invalidateAt(node);
+            }
+        }
+    }
+
+    private synchronized void changed(AbstractDatasetChangedEvent event) {
+        if (event instanceof DataChangedEvent) {
+            List<AbstractDatasetChangedEvent> events = ((DataChangedEvent) event).getEvents();
+            if (events == null) {
+                //Too much changed to keep track of, start over
+                roundabouts = null;
+                entries.clear();
+                roundaboutsByApproach.clear();
+            } else {
+                //Changes made in one DataSet update
+                for (AbstractDatasetChangedEvent e : events) {
+                    changed(e);
+                }
+            }
+        } else {
+            for (OsmPrimitive primitive : event.getPrimitives()) {
+                changed(primitive);
+            }
+        }
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        changed(event);
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        changed(event);
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        changed(event);
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        //Geometry does not matter to the index
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        changed(event);
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        //Relations do not matter to the index
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        changed(event);
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        changed(event);
+    }
+}
@@ -0,0 +1,89 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.openstreetmap.josm.command.ChangeCommand;
+import org.openstreetmap.josm.command.ChangeNodesCommand;
+import org.openstreetmap.josm.command.PseudoCommand;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+
+/**
+ * Rough estimate of the memory commands keep on the undo stack.
+ * <p>
+ * A command keeps the old state of each primitive it changes. A
+ * {@link ChangeCommand} also keeps a full copy of the new primitive, while a
+ * {@link ChangeNodesCommand} only keeps the new node list.
+ * The numbers are for comparing one way of doing a change with another,
+ * not exact heap sizes.
+ *
+ * @author Gorm
+ */
+public final class UndoMemory {
+
+    /** Object header and fields of a primitive or its saved state */
+    private static final int PRIMITIVE = 64;
+    /** One tag key or value, not counting the characters */
+    private static final int STRING = 40;
+    /** One reference or node id */
+    private static final int REFERENCE = 8;
+    /** A command object with its fields */
+    private static final int COMMAND = 48;
+
+    private UndoMemory() {
+        // Hide default constructor
+    }
+
+    /**
+     * Estimate the memory kept by some commands
+     * @param commands commands, with their children
+     * @return estimated size in bytes
+     */
+    public static long estimate(Collection<? extends PseudoCommand> commands) {
+        long size = 0;
+        for (PseudoCommand command : commands) {
+            size += estimate(command);
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the memory kept by a command
+     * @param command command, with its children
+     * @return estimated size in bytes
+     */
+    public static long estimate(PseudoCommand command) {
+        Collection<? extends PseudoCommand> children = command.getChildren();
+        if (children != null && !children.isEmpty()) {
+            return COMMAND + estimate(children);
+        }
+        long size = COMMAND;
+        for (OsmPrimitive osm : command.getParticipatingPrimitives()) {
+            size += estimate(osm);
+            if (command instanceof ChangeCommand) {
+                size += estimate(osm);
+            } else if (command instanceof ChangeNodesCommand && osm instanceof Way) {
+                size += PRIMITIVE + (long) REFERENCE * ((Way) osm).getNodesCount();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the memory used by a saved copy of a primitive
+     * @param osm primitive
+     * @return estimated size in bytes
+     */
+    private static long estimate(OsmPrimitive osm) {
+        long size = PRIMITIVE;
+        for (Map.Entry<String, String> tag : osm.getKeys().entrySet()) {
+            size += 2 * STRING + tag.getKey().length() + tag.getValue().length();
+        }
+        if (osm instanceof Way) {
+            size += (long) REFERENCE * ((Way) osm).getNodesCount();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,105 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.Notification;
+import org.openstreetmap.josm.plugins.rex.RoundaboutIndex;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * Makes the selected roundabouts round, or all roundabouts in the edit
+ * layer if none are selected.
+ *
+ * @author Gorm
+ */
+public class CircularizeRoundaboutsAction extends JosmAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex:circularize",
+                tr("Menu: {0}", tr("Make roundabouts round")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE);
+    }
+
+    /**
+     * Constructor
+     */
+    public CircularizeRoundaboutsAction() {
+        super(
+                tr("Make roundabouts round"),
+                "dialogs/logo-rex",
+                tr("Fit a circle to the selected roundabouts, or all roundabouts if none are selected"),
+                shortcut(),
+                false
+                );
+    }
+
+    @Override
+    protected void updateEnabledState() {
+        setEnabled(getLayerManager().getEditDataSet() != null);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            return;
+        }
+        List<Way> roundabouts = getRoundabouts(ds.getSelectedWays());
+        if (roundabouts.isEmpty()) {
+            roundabouts = getRoundabouts(EditLayerIndex.get(ds).getRoundabouts());
+        }
+
+        long start = System.nanoTime();
+        NotifyingExpander expander = new NotifyingExpander();
+        List<Way> done = expander.circularize(roundabouts);
+        Logging.debug("REX: made {0} of {1} roundabouts round in {2} ms",
+                done.size(), roundabouts.size(), (System.nanoTime() - start) / 1_000_000);
+
+        if (done.isEmpty()) {
+            //A warning told how many were too far from round to be changed
+            if (expander.hasWarned()) {
+                return;
+            }
+            new Notification(tr("The roundabouts are already round"))
+                    .setIcon(JOptionPane.INFORMATION_MESSAGE)
+                    .setDuration(Notification.TIME_SHORT)
+                    .show();
+            return;
+        }
+        ds.setSelected(done);
+        MainApplication.getMap().mapView.repaint();
+    }
+
+    /**
+     * @return the closed roundabouts among ways
+     */
+    private static List<Way> getRoundabouts(Collection<Way> ways) {
+        List<Way> roundabouts = new ArrayList<>();
+        for (Way way : ways) {
+            if (way.isClosed() && RoundaboutIndex.isRoundabout(way)) {
+                roundabouts.add(way);
+            }
+        }
+        return roundabouts;
+    }
+}
@@ -0,0 +1,119 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+import static org.openstreetmap.josm.tools.I18n.trn;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.ExtendedDialog;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.Notification;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.detect.RoundaboutDetector;
+import org.openstreetmap.josm.plugins.rex.detect.RoundaboutDetector.Candidate;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * Finds closed highways in the edit layer that look like roundabouts,
+ * and offers to tag them as such.
+ *
+ * @author Gorm
+ */
+public class DetectRoundaboutsAction extends JosmAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex:detect",
+                tr("Menu: {0}", tr("Find untagged roundabouts")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE);
+    }
+
+    /**
+     * Constructor
+     */
+    public DetectRoundaboutsAction() {
+        super(
+                tr("Find untagged roundabouts"),
+                "dialogs/logo-rex",
+                tr("Find closed highways that look like roundabouts but are not tagged as such"),
+                shortcut(),
+                false
+                );
+    }
+
+    @Override
+    protected void updateEnabledState() {
+        setEnabled(getLayerManager().getEditDataSet() != null);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Candidate> candidates = new RoundaboutDetector().detect(ds);
+        Logging.debug("REX: found {0} untagged roundabouts in {1} ms",
+                candidates.size(), (System.nanoTime() - start) / 1_000_000);
+
+        if (candidates.isEmpty()) {
+            new Notification(tr("No untagged roundabouts found"))
+                    .setIcon(JOptionPane.INFORMATION_MESSAGE)
+                    .setDuration(Notification.TIME_SHORT)
+                    .show();
+            return;
+        }
+
+        List<Way> ways = new ArrayList<>(candidates.size());
+        for (Candidate c : candidates) {
+            ways.add(c.way);
+        }
+        ExtendedDialog dialog = new ExtendedDialog(MainApplication.getMainFrame(), tr("Roundabout Expander"),
+                tr("Tag"), tr("Select"), tr("Cancel"))
+                .setButtonIcons("ok", "dialogs/select", "cancel")
+                .setContent(trn("Found {0} closed highway that looks like a roundabout.",
+                        "Found {0} closed highways that look like roundabouts.", ways.size(), ways.size())
+                        + "\n" + tr("Tag them junction=roundabout?"))
+                .showDialog();
+        switch (dialog.getValue()) {
+        case 1:
+            RoundaboutExpander expander = new RoundaboutExpander(UndoRedoHandler.getInstance()::add);
+            expander.runAsOneCommand(ds,
+                    trn("Tag {0} roundabout", "Tag {0} roundabouts", ways.size(), ways.size()),
+                    () -> {
+                        for (Way way : ways) {
+                            //The data may have changed while the dialog was open
+                            if (way.isUsable() && way.getDataSet() == ds) {
+                                expander.tagAsRoundabout(way);
+                            }
+                        }
+                        return null;
+                    });
+            ds.setSelected(ways);
+            break;
+        case 2:
+            ds.setSelected(ways);
+            break;
+        default:
+            return;
+        }
+        MainApplication.getMap().mapView.repaint();
+    }
+}
@@ -0,0 +1,90 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerAddEvent;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerChangeListener;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerOrderChangeEvent;
+import org.openstreetmap.josm.gui.layer.LayerManager.LayerRemoveEvent;
+import org.openstreetmap.josm.gui.layer.MainLayerManager.ActiveLayerChangeEvent;
+import org.openstreetmap.josm.gui.layer.MainLayerManager.ActiveLayerChangeListener;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.plugins.rex.RoundaboutIndex;
+
+/**
+ * The one {@link RoundaboutIndex} the actions share, for the edit data set.
+ * <p>
+ * The index listens to its data set, so it is destroyed as soon as that
+ * is no longer the edit data set or its layer is removed. Otherwise it
+ * would keep the whole data set of a closed layer in memory.
+ *
+ * @author Gorm
+ */
+final class EditLayerIndex implements ActiveLayerChangeListener, LayerChangeListener {
+
+    private static final EditLayerIndex INSTANCE = new EditLayerIndex();
+
+    private static boolean listening;
+
+    private RoundaboutIndex index;
+
+    private EditLayerIndex() {
+        // Use get
+    }
+
+    /**
+     * Get the index for ds, making it if needed
+     * @param ds the edit data set
+     * @return the index
+     */
+    static RoundaboutIndex get(DataSet ds) {
+        synchronized (INSTANCE) {
+            if (!listening) {
+                MainApplication.getLayerManager().addActiveLayerChangeListener(INSTANCE);
+                MainApplication.getLayerManager().addLayerChangeListener(INSTANCE);
+                listening = true;
+            }
+            if (INSTANCE.index == null || INSTANCE.index.getDataSet() != ds) {
+                INSTANCE.destroy();
+                INSTANCE.index = new RoundaboutIndex(ds);
+            }
+            return INSTANCE.index;
+        }
+    }
+
+    /**
+     * Stop the index listening and let it go
+     */
+    private synchronized void destroy() {
+        if (index != null) {
+            index.destroy();
+            index = null;
+        }
+    }
+
+    @Override
+    public synchronized void activeOrEditLayerChanged(ActiveLayerChangeEvent e) {
+        if (index != null && index.getDataSet() != MainApplication.getLayerManager().getEditDataSet()) {
+            destroy();
+        }
+    }
+
+    @Override
+    public synchronized void layerRemoving(LayerRemoveEvent e) {
+        if (index != null && e.getRemovedLayer() instanceof OsmDataLayer
+                && ((OsmDataLayer) e.getRemovedLayer()).getDataSet() == index.getDataSet()) {
+            destroy();
+        }
+    }
+
+    @Override
+    public void layerAdded(LayerAddEvent e) {
+        // Nothing to do
+    }
+
+    @Override
+    public void layerOrderChanged(LayerOrderChangeEvent e) {
+        // Nothing to do
+    }
+}
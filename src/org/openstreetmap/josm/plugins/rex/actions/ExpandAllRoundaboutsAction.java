@@ -0,0 +1,86 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * Expands every mini roundabout in the edit layer, or in the selection
+ * if any mini roundabouts are selected.
+ *
+ * @author Gorm
+ */
+public class ExpandAllRoundaboutsAction extends JosmAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Does the actual expansion
+     */
+    private final transient TagRoundaboutAction expander;
+
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex:expandall",
+                tr("Menu: {0}", tr("Expand all mini roundabouts")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE);
+    }
+
+    /**
+     * Constructor
+     * @param expander the action used to expand each roundabout
+     */
+    public ExpandAllRoundaboutsAction(TagRoundaboutAction expander) {
+        super(
+                tr("Expand all mini roundabouts"),
+                "dialogs/logo-rex",
+                tr("Expand all selected mini roundabouts, or all in the layer if none are selected"),
+                shortcut(),
+                false
+                );
+        this.expander = expander;
+    }
+
+    @Override
+    protected void updateEnabledState() {
+        setEnabled(getLayerManager().getEditDataSet() != null);
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            return;
+        }
+        List<Node> nodes = findMiniRoundabouts(ds.getSelected());
+        if (nodes.isEmpty()) {
+            nodes = findMiniRoundabouts(ds.getNodes());
+        }
+        expander.expandAll(nodes);
+    }
+
+    private static List<Node> findMiniRoundabouts(Collection<? extends OsmPrimitive> primitives) {
+        List<Node> nodes = new ArrayList<>();
+        for (OsmPrimitive p : primitives) {
+            if (p instanceof Node && p.isUsable() && RoundaboutExpander.isMiniRoundabout((Node) p)) {
+                nodes.add((Node) p);
+            }
+        }
+        return nodes;
+    }
+}
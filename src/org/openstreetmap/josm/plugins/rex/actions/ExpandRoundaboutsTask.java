@@ -0,0 +1,79 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.PleaseWaitRunnable;
+import org.openstreetmap.josm.plugins.rex.ExpansionParameters;
+import org.openstreetmap.josm.plugins.rex.JunctionPlan;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+
+/**
+ * Expands many mini roundabouts in the background, with progress per
+ * junction and the option to cancel.
+ * <p>
+ * The junctions are planned off the event dispatch thread, only reading the
+ * data under its read lock. The commands are then made and executed on the
+ * event dispatch thread, as one command on the undo stack, so the data and
+ * its listeners are only changed there. If canceled, the data is left as it was.
+ *
+ * @author Gorm
+ */
+public class ExpandRoundaboutsTask extends PleaseWaitRunnable {
+
+    private final DataSet ds;
+    private final Collection<Node> nodes;
+    private final ExpansionParameters params = ExpansionParameters.fromPreferences();
+    private List<JunctionPlan> plans;
+    /** Set on the event dispatch thread, read by the worker */
+    private volatile boolean canceled;
+
+    /**
+     * Constructor
+     * @param ds    data set the nodes are in
+     * @param nodes mini roundabout nodes to expand
+     */
+    public ExpandRoundaboutsTask(DataSet ds, Collection<Node> nodes) {
+        super(tr("Expanding roundabouts"), false);
+        this.ds = ds;
+        this.nodes = new ArrayList<>(nodes);
+    }
+
+    @Override
+    protected void cancel() {
+        canceled = true;
+    }
+
+    @Override
+    protected void realRun() {
+        try {
+            plans = RoundaboutExpander.planAll(ds, nodes, params,
+                    getProgressMonitor().createSubTaskMonitor(nodes.size(), false));
+        } catch (CancellationException e) {
+            canceled = true;
+        }
+    }
+
+    @Override
+    protected void finish() {
+        if (canceled || plans == null || plans.isEmpty()) {
+            return;
+        }
+        RoundaboutExpander expander = new RoundaboutExpander(UndoRedoHandler.getInstance()::add);
+        List<Way> roundabouts = expander.expandAll(ds, plans, params.isFlares());
+        ds.setSelected(roundabouts);
+        if (MainApplication.getMap() != null) {
+            MainApplication.getMap().mapView.repaint();
+        }
+    }
+}
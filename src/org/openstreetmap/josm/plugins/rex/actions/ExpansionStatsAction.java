@@ -0,0 +1,90 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableModel;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.gui.ExtendedDialog;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.plugins.rex.stats.ExpansionStats;
+import org.openstreetmap.josm.plugins.rex.stats.ExpansionStats.Phase;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * Shows the time spent in each phase of expanding roundabouts
+ * since JOSM was started or the numbers were reset.
+ *
+ * @author Gorm
+ */
+public class ExpansionStatsAction extends JosmAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex:stats",
+                tr("Menu: {0}", tr("Roundabout Expander statistics")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE);
+    }
+
+    /**
+     * Constructor
+     */
+    public ExpansionStatsAction() {
+        super(
+                tr("Roundabout Expander statistics"),
+                "dialogs/logo-rex",
+                tr("Show the time spent in each phase of expanding roundabouts"),
+                shortcut(),
+                false
+                );
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DefaultTableModel model = new DefaultTableModel(new Object[] {
+                tr("Phase"), tr("Runs"), tr("Total (ms)"), tr("Mean (ms)"), tr("Commands"), tr("Primitives")}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        fill(model);
+        JTable table = new JTable(model);
+        JScrollPane scroll = new JScrollPane(table);
+        scroll.setPreferredSize(new Dimension(600, table.getRowHeight() * (model.getRowCount() + 2)));
+
+        ExtendedDialog dialog = new ExtendedDialog(MainApplication.getMainFrame(),
+                tr("Roundabout Expander statistics"), tr("Reset"), tr("Close"))
+                .setContent(scroll, false)
+                .showDialog();
+        if (dialog.getValue() == 1) {
+            ExpansionStats.reset();
+        }
+    }
+
+    private static void fill(DefaultTableModel model) {
+        for (Phase phase : Phase.values()) {
+            long calls = phase.getCalls();
+            double total = phase.getNanos() / 1e6;
+            model.addRow(new Object[] {
+                    phase.getDescription(),
+                    calls,
+                    String.format("%.1f", total),
+                    calls == 0 ? "" : String.format("%.2f", total / calls),
+                    phase.getCommands(),
+                    phase.getPrimitives()});
+        }
+    }
+}
@@ -0,0 +1,52 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.gui.Notification;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Expander for the actions: the commands go to the undo stack, and
+ * warnings are shown to the user as well as logged.
+ *
+ * @author Gorm
+ */
+class NotifyingExpander extends RoundaboutExpander {
+
+    private boolean warned;
+
+    /**
+     * Constructor
+     */
+    NotifyingExpander() {
+        super(UndoRedoHandler.getInstance()::add);
+    }
+
+    @Override
+    protected void warn(String message) {
+        warned = true;
+        showWarning(message);
+    }
+
+    /**
+     * @return true if a warning has been shown, e.g. to not follow it with another message
+     */
+    boolean hasWarned() {
+        return warned;
+    }
+
+    /**
+     * Show a warning message for a short while, and log it
+     * @param message message
+     */
+    static void showWarning(String message) {
+        new Notification(message)
+                .setIcon(JOptionPane.WARNING_MESSAGE)
+                .setDuration(Notification.TIME_SHORT)
+                .show();
+        Logging.warn(message);
+    }
+}
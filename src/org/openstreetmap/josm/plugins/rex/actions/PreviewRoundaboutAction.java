@@ -0,0 +1,166 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.Collection;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.data.UndoRedoHandler;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.ExtendedDialog;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.plugins.rex.ExpansionParameters;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.geometry.ChordSpacing;
+import org.openstreetmap.josm.plugins.rex.preview.ExpansionPreview;
+import org.openstreetmap.josm.plugins.rex.preview.PreviewLayer;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.tools.GBC;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * Shows what expanding the selected mini roundabout would look like,
+ * and lets the user adjust diameter and roundness before expanding.
+ * <p>
+ * Nothing is changed in the data until the user confirms.
+ *
+ * @author Gorm
+ */
+public class PreviewRoundaboutAction extends JosmAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex:preview",
+                tr("Menu: {0}", tr("Preview roundabout expansion")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE);
+    }
+
+    /**
+     * Constructor
+     */
+    public PreviewRoundaboutAction() {
+        super(
+                tr("Preview roundabout expansion"),
+                "dialogs/logo-rex",
+                tr("Preview and adjust the expansion of the selected mini roundabout"),
+                shortcut(),
+                false
+                );
+    }
+
+    @Override
+    protected void updateEnabledState() {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            setEnabled(false);
+        } else
+            updateEnabledState(ds.getAllSelected());
+    }
+
+    @Override
+    protected void updateEnabledState(Collection<? extends OsmPrimitive> selection) {
+        setEnabled(getMiniRoundabout(selection) != null);
+    }
+
+    /**
+     * @return the selected mini roundabout node, or null if the selection is something else
+     */
+    private static Node getMiniRoundabout(Collection<? extends OsmPrimitive> selection) {
+        if (selection != null && selection.size() == 1) {
+            OsmPrimitive p = selection.iterator().next();
+            if (p instanceof Node && p.isUsable() && RoundaboutExpander.isMiniRoundabout((Node) p)) {
+                return (Node) p;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            return;
+        }
+        Node node = getMiniRoundabout(ds.getAllSelected());
+        if (node == null) {
+            return;
+        }
+        boolean lefthandtraffic = RoundaboutExpander.isLeftHandTraffic(node);
+        int diameter = (int) Math.round(RoundaboutExpander.getRadius(node) * 2);
+        double maxError = Config.getPref().getDouble("rex.max_chord_error", 0.3);
+        int maxNodes = Config.getPref().getInt("rex.max_ring_nodes", 48);
+        double maxAngle = Math.toRadians(ExpansionParameters.getMaxGapDegrees());
+
+        JSpinner diameterSpinner = new JSpinner(new SpinnerNumberModel(Math.max(2, Math.min(diameter, 500)), 2, 500, 1));
+        JSpinner errorSpinner = new JSpinner(new SpinnerNumberModel(Math.max(0.05, Math.min(maxError, 5)), 0.05, 5, 0.05));
+        JCheckBox flaresBox = new JCheckBox(tr("Make flares"));
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.add(new JLabel(tr("Diameter (m)")), GBC.std().insets(0, 0, 5, 0));
+        panel.add(diameterSpinner, GBC.eol());
+        panel.add(new JLabel(tr("Max distance from circle (m)")), GBC.std().insets(0, 0, 5, 0));
+        panel.add(errorSpinner, GBC.eol());
+        panel.add(flaresBox, GBC.eol());
+
+        MapView mapView = MainApplication.getMap().mapView;
+        PreviewLayer preview = new PreviewLayer(mapView, ExpansionPreview.snapshot(node));
+        Runnable update = () -> {
+            double radius = ((Number) diameterSpinner.getValue()).doubleValue() / 2;
+            preview.update(radius,
+                    ChordSpacing.maxGap(radius, ((Number) errorSpinner.getValue()).doubleValue(), maxNodes, maxAngle),
+                    lefthandtraffic,
+                    flaresBox.isSelected());
+        };
+        diameterSpinner.addChangeListener(ev -> update.run());
+        errorSpinner.addChangeListener(ev -> update.run());
+        flaresBox.addActionListener(ev -> update.run());
+
+        mapView.addTemporaryLayer(preview);
+        ExtendedDialog dialog;
+        try {
+            update.run();
+            dialog = new ExtendedDialog(MainApplication.getMainFrame(), tr("Roundabout Expander"), tr("Expand"), tr("Cancel"))
+                    .setButtonIcons("ok", "cancel")
+                    .setContent(panel)
+                    .showDialog();
+        } finally {
+            mapView.removeTemporaryLayer(preview);
+            mapView.repaint();
+        }
+
+        //The node may have gone while the dialog was open
+        if (dialog.getValue() != 1 || !node.isUsable() || node.getDataSet() != ds) {
+            return;
+        }
+        double radius = ((Number) diameterSpinner.getValue()).doubleValue() / 2;
+        double maxGap = ChordSpacing.maxGap(radius, ((Number) errorSpinner.getValue()).doubleValue(), maxNodes, maxAngle);
+        boolean flares = flaresBox.isSelected();
+        RoundaboutExpander expander = new RoundaboutExpander(UndoRedoHandler.getInstance()::add);
+        Way roundabout = expander.runAsOneCommand(ds, tr("Expand roundabout"), () -> {
+            Way way = expander.makeRoundabout(node, radius, lefthandtraffic, maxGap);
+            if (flares) {
+                expander.makeFlares(RoundaboutExpander.findFlareCandidates(way));
+            }
+            return way;
+        });
+        ds.setSelected(roundabout);
+    }
+}
@@ -0,0 +1,116 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.GridBagLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.util.Collection;
+
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.ExtendedDialog;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.RoundaboutIndex;
+import org.openstreetmap.josm.tools.GBC;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * Changes the diameter of the selected roundabout, without expanding it again.
+ *
+ * @author Gorm
+ */
+public class ResizeRoundaboutAction extends JosmAction {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex:resize",
+                tr("Menu: {0}", tr("Resize roundabout")),
+                KeyEvent.CHAR_UNDEFINED, Shortcut.NONE);
+    }
+
+    /**
+     * Constructor
+     */
+    public ResizeRoundaboutAction() {
+        super(
+                tr("Resize roundabout"),
+                "dialogs/logo-rex",
+                tr("Change the diameter of the selected roundabout"),
+                shortcut(),
+                false
+                );
+    }
+
+    @Override
+    protected void updateEnabledState() {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            setEnabled(false);
+        } else
+            updateEnabledState(ds.getAllSelected());
+    }
+
+    @Override
+    protected void updateEnabledState(Collection<? extends OsmPrimitive> selection) {
+        setEnabled(getRoundabout(selection) != null);
+    }
+
+    /**
+     * @return the selected roundabout, or null if the selection is something else
+     */
+    private static Way getRoundabout(Collection<? extends OsmPrimitive> selection) {
+        if (selection != null && selection.size() == 1) {
+            OsmPrimitive p = selection.iterator().next();
+            if (p instanceof Way && ((Way) p).isClosed() && RoundaboutIndex.isRoundabout((Way) p)) {
+                return (Way) p;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            return;
+        }
+        Way roundabout = getRoundabout(ds.getAllSelected());
+        if (roundabout == null) {
+            return;
+        }
+        int diameter = (int) Math.round(RoundaboutExpander.getRadius(roundabout) * 2);
+        JSpinner diameterSpinner = new JSpinner(new SpinnerNumberModel(Math.max(2, Math.min(diameter, 500)), 2, 500, 1));
+        JPanel panel = new JPanel(new GridBagLayout());
+        panel.add(new JLabel(tr("Diameter (m)")), GBC.std().insets(0, 0, 5, 0));
+        panel.add(diameterSpinner, GBC.eol());
+
+        ExtendedDialog dialog = new ExtendedDialog(MainApplication.getMainFrame(), tr("Roundabout Expander"),
+                tr("Resize"), tr("Cancel"))
+                .setButtonIcons("ok", "cancel")
+                .setContent(panel)
+                .showDialog();
+
+        //The way may have gone while the dialog was open
+        if (dialog.getValue() != 1 || !roundabout.isUsable() || roundabout.getDataSet() != ds) {
+            return;
+        }
+        double radius = ((Number) diameterSpinner.getValue()).doubleValue() / 2;
+        new NotifyingExpander().resizeRoundabout(roundabout, radius, RoundaboutExpander.getMaxGap(radius));
+        MainApplication.getMap().mapView.repaint();
+    }
+}
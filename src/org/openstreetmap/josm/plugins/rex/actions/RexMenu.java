@@ -0,0 +1,143 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import java.awt.event.ActionEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.AbstractAction;
+import javax.swing.Action;
+import javax.swing.JMenu;
+import javax.swing.JMenuItem;
+import javax.swing.event.MenuEvent;
+import javax.swing.event.MenuListener;
+
+import org.openstreetmap.josm.actions.JosmAction;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MainMenu;
+import org.openstreetmap.josm.tools.Shortcut;
+
+/**
+ * The menu entries of the plugin, made when first needed.
+ * <p>
+ * Making the actions loads their icons, which takes time at startup for
+ * something that may not be used at all. So at startup only the shortcuts
+ * are registered, and bound to a stand-in. The actions and menu entries
+ * are made when the menu is first opened, or a shortcut is first used.
+ *
+ * @author Gorm
+ */
+public final class RexMenu implements MenuListener {
+
+    private final JMenu menu;
+
+    /**
+     * Stand-ins for the shortcuts that have a key, until the actions are made
+     */
+    private final Map<Shortcut, Action> standIns = new LinkedHashMap<>();
+
+    /**
+     * The actions, null until made
+     */
+    private List<JosmAction> actions;
+
+    private final List<JMenuItem> items = new ArrayList<>();
+
+    private boolean enabled = true;
+
+    /**
+     * Register the shortcuts, and make the rest when menu is first opened
+     * @param menu menu to add the entries to
+     */
+    public RexMenu(JMenu menu) {
+        this.menu = menu;
+        bind(TagRoundaboutAction.shortcut(), 0);
+        bind(ExpandAllRoundaboutsAction.shortcut(), 1);
+        bind(PreviewRoundaboutAction.shortcut(), 2);
+        bind(ResizeRoundaboutAction.shortcut(), 3);
+        bind(CircularizeRoundaboutsAction.shortcut(), 4);
+        bind(DetectRoundaboutsAction.shortcut(), 5);
+        bind(ExpansionStatsAction.shortcut(), 6);
+        menu.addMenuListener(this);
+    }
+
+    /**
+     * Bind shortcut to a stand-in for the action at index, if it has a key
+     */
+    private void bind(Shortcut shortcut, int index) {
+        if (shortcut.getKeyStroke() == null) {
+            return;
+        }
+        Action standIn = new AbstractAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JosmAction action = getActions().get(index);
+                if (action.isEnabled()) {
+                    action.actionPerformed(e);
+                }
+            }
+        };
+        MainApplication.registerActionShortcut(standIn, shortcut);
+        standIns.put(shortcut, standIn);
+    }
+
+    /**
+     * Get the actions, making them and the menu entries if not done yet
+     * @return the actions
+     */
+    public List<JosmAction> getActions() {
+        if (actions == null) {
+            menu.removeMenuListener(this);
+            //The actions bind their own shortcuts
+            standIns.forEach((shortcut, standIn) -> MainApplication.unregisterActionShortcut(standIn, shortcut));
+            standIns.clear();
+
+            TagRoundaboutAction tagRoundaboutAction = new TagRoundaboutAction();
+            actions = Arrays.asList(
+                    tagRoundaboutAction,
+                    new ExpandAllRoundaboutsAction(tagRoundaboutAction),
+                    new PreviewRoundaboutAction(),
+                    new ResizeRoundaboutAction(),
+                    new CircularizeRoundaboutsAction(),
+                    new DetectRoundaboutsAction(),
+                    new ExpansionStatsAction());
+            for (JosmAction action : actions) {
+                items.add(MainMenu.add(menu, action));
+            }
+            setEnabled(enabled);
+        }
+        return actions;
+    }
+
+    /**
+     * Enable or disable the entries that need a map
+     * @param enabled true to enable
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        //The statistics do not need a map
+        for (int i = 0; i < items.size() - 1; i++) {
+            items.get(i).setEnabled(enabled);
+        }
+    }
+
+    @Override
+    public void menuSelected(MenuEvent e) {
+        getActions();
+    }
+
+    @Override
+    public void menuDeselected(MenuEvent e) {
+        // Nothing to do
+    }
+
+    @Override
+    public void menuCanceled(MenuEvent e) {
+        // Nothing to do
+    }
+}
@@ -0,0 +1,94 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.RoundaboutIndex;
+
+/**
+ * Decides which step of making a roundabout applies to a selection.
+ * <p>
+ * For a selection of several, the elements are looked at up to the first
+ * one that decides the step: a node, or a roundabout way. Relations and other
+ * ways are passed over. That is usually the first element, so this is cheap
+ * even when everything is selected. The step that is run checks the rest of
+ * the selection as it does its work.
+ *
+ * @author Gorm
+ */
+final class SelectionClassifier {
+
+    /**
+     * The steps of making a roundabout
+     */
+    enum Step {
+        /** Tag a node as mini roundabout */
+        TAG_NODE(marktr("Tag as mini roundabout")),
+        /** Expand a mini roundabout */
+        EXPAND(marktr("Expand roundabout")),
+        /** Expand several mini roundabouts */
+        EXPAND_ALL(marktr("Expand roundabouts")),
+        /** Tag a closed way as roundabout */
+        TAG_WAY(marktr("Tag as roundabout")),
+        /** Make flares at the selected nodes */
+        FLARES(marktr("Make flares")),
+        /** Make flares on all the selected roundabouts */
+        FLARES_ALL(marktr("Make flares on roundabouts")),
+        /** Nothing to do */
+        NONE(null);
+
+        private final String description;
+
+        Step(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return what the step does, null for {@link #NONE}
+         */
+        String getDescription() {
+            return description == null ? null : tr(description);
+        }
+    }
+
+    private SelectionClassifier() {
+        // Hide default constructor
+    }
+
+    /**
+     * Find the step that applies to selection
+     * @param selection selected primitives, its size must be cheap to get
+     * @return the step
+     */
+    static Step classify(Collection<? extends OsmPrimitive> selection) {
+        if (selection == null || selection.isEmpty()) {
+            return Step.NONE;
+        }
+        Iterator<? extends OsmPrimitive> it = selection.iterator();
+        OsmPrimitive first = it.next();
+        if (selection.size() == 1) {
+            if (first instanceof Node) {
+                return RoundaboutExpander.isMiniRoundabout((Node) first) ? Step.EXPAND : Step.TAG_NODE;
+            } else if (first instanceof Way && ((Way) first).isClosed()) {
+                return Step.TAG_WAY;
+            }
+            return Step.NONE;
+        }
+        for (OsmPrimitive p = first; p != null; p = it.hasNext() ? it.next() : null) {
+            if (p instanceof Node) {
+                return RoundaboutExpander.isMiniRoundabout((Node) p) ? Step.EXPAND_ALL : Step.FLARES;
+            } else if (p instanceof Way && RoundaboutIndex.isRoundabout((Way) p)) {
+                return Step.FLARES_ALL;
+            }
+        }
+        return Step.NONE;
+    }
+}
@@ -7,39 +7,25 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-
-import javax.swing.JOptionPane;
 
 import org.openstreetmap.josm.actions.JosmAction;
-import org.openstreetmap.josm.command.AddCommand;
-import org.openstreetmap.josm.command.ChangeCommand;
-import org.openstreetmap.josm.command.ChangePropertyCommand;
-import org.openstreetmap.josm.command.SplitWayCommand;
-import org.openstreetmap.josm.data.UndoRedoHandler;
-import org.openstreetmap.josm.data.coor.ILatLon;
-import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
-import org.openstreetmap.josm.data.osm.OsmDataManager;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.MainApplication;
-import org.openstreetmap.josm.gui.Notification;
-import org.openstreetmap.josm.spi.preferences.Config;
-import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.RoundaboutIndex;
+import org.openstreetmap.josm.plugins.rex.actions.SelectionClassifier.Step;
 import org.openstreetmap.josm.tools.Shortcut;
 import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Expands to a roundabout
+ * <p>
+ * The work itself is done by {@link RoundaboutExpander}, this action
+ * looks at the selection and puts the result on the undo stack.
  *
  * @author Gorm
  */
@@ -47,29 +33,63 @@ public class TagRoundaboutAction extends JosmAction {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Does the work, sending the commands to the undo stack
+     */
+    private final transient RoundaboutExpander expander = new NotifyingExpander();
+
+    /**
+     * The step that applies to the current selection.
+     * <p>
+     * Set by the first {@link #updateEnabledState()}, which the super constructor
+     * calls. It must have no initializer, as that would run afterwards and undo it.
+     */
+    private transient Step step;
+
     @Override
     protected void updateEnabledState() {
         if (getLayerManager().getEditDataSet() == null) {
-            setEnabled(false);
+            setStep(Step.NONE);
         } else
-            updateEnabledState(getLayerManager().getEditDataSet().getSelected());
+            updateEnabledState(getLayerManager().getEditDataSet().getAllSelected());
     }
 
     @Override
     protected void updateEnabledState(Collection<? extends OsmPrimitive> selection) {
-        if (selection == null || selection.isEmpty()) {
-            setEnabled(false);
+        setStep(SelectionClassifier.classify(selection));
+    }
+
+    /**
+     * Remember the step that applies, and show it in the menu
+     */
+    private void setStep(Step newStep) {
+        setEnabled(newStep != Step.NONE);
+        if (newStep != step) {
+            step = newStep;
+            String name = newStep == Step.NONE
+                    ? tr("Roundabout Expander")
+                    : tr("Roundabout Expander: {0}", newStep.getDescription());
+            putValue(NAME, name);
+            setTooltip(name);
         }
     }
 
+    /**
+     * Register the shortcut of this action, so it can be bound before the action is made
+     * @return the shortcut
+     */
+    static Shortcut shortcut() {
+        return Shortcut.registerShortcut("menu:rex",
+                tr("Menu: {0}", tr("Roundabout Expander")),
+                KeyEvent.VK_R, Shortcut.CTRL_SHIFT);
+    }
+
     public TagRoundaboutAction() {
         super(
                 tr("Roundabout Expander"),
                 "dialogs/logo-rex",
                 tr("Roundabout Expander"),
-                Shortcut.registerShortcut("menu:rex",
-                        tr("Menu: {0}", tr("Roundabout Expander")),
-                        KeyEvent.VK_R, Shortcut.CTRL_SHIFT),
+                shortcut(),
                 false
                 );
     }
@@ -83,76 +103,78 @@ public class TagRoundaboutAction extends JosmAction {
      * by the user.
      * So, to make a full roundabout with flares, one may repeatedly press
      * the keyboard shortcut until the roundabout is made.
+     * <p>
+     * If several mini roundabout nodes are selected, they are all expanded
+     * in one go, see {@link #expandAll(Collection)}.
      */
     @Override
     public void actionPerformed(ActionEvent e) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null) {
+            return;
+        }
 
         //Figure out what we have to work with:
-        Collection<OsmPrimitive> selection = getLayerManager().getEditDataSet().getSelected();
-        List<Node> selectedNodes = new ArrayList<>(Utils.filteredCollection(selection, Node.class));
-        List<Way> selectedWays = new ArrayList<>(Utils.filteredCollection(selection, Way.class));
-
-        //If we have exactly one single node selected
-        if (selection.size() == 1
-                && selectedNodes.size() == 1
-                ) {
-            Node node = selectedNodes.get(0);
-            if (!"mini_roundabout".equals(node.getKeys().get("highway"))) {
-                //Make it a mini roundabout
-                tagAsRoundabout(node);
+        Collection<OsmPrimitive> selection = ds.getAllSelected();
+        updateEnabledState(selection);
+
+        switch (step) {
+        case TAG_NODE:
+            //Make it a mini roundabout
+            tagAsRoundabout((Node) selection.iterator().next());
+            break;
+        case EXPAND:
+            Node node = (Node) selection.iterator().next();
+            double radius = RoundaboutExpander.getRadius(node);
+            Way roundabout = makeRoundabout(node, radius,
+                    RoundaboutExpander.isLeftHandTraffic(node), RoundaboutExpander.getMaxGap(radius));
+            ds.setSelected(roundabout);
+            selectFlareCandidates();
+            break;
+        case TAG_WAY:
+            //The way is closed (looks like roundabout)
+            tagAsRoundabout((Way) selection.iterator().next());
+            selectFlareCandidates();
+            break;
+        case EXPAND_ALL:
+            List<Node> selectedNodes = new ArrayList<>(Utils.filteredCollection(selection, Node.class));
+            if (selectedNodes.size() == selection.size()
+                    && selectedNodes.stream().allMatch(RoundaboutExpander::isMiniRoundabout)) {
+                //All of them are mini roundabouts, expand them together
+                expandAll(selectedNodes);
             } else {
-                //Get defaults
-                double radi = Config.getPref().getInt("rex.diameter_meter", 12) / 2d;
-                double maxGap = Math.toRadians(Config.getPref().getInt("rex.max_gap_degrees", 30));
-                boolean lefthandtraffic = Config.getPref().getBoolean("mappaint.lefthandtraffic", false);
-
-                //See if user want another direction
-                if (node.getKeys().containsKey("direction") &&
-                        "clockwise".equals(node.getKeys().get("direction"))
-                        ) {
-                    lefthandtraffic = true;
-                    Logging.debug("REX: direction overridden by direction=clockwise");
-                }
-
-                //See if user want another size
-                if (node.getKeys().containsKey("diameter")) {
-                    try {
-                        int d = Integer.parseInt(node.getKeys().get("diameter"));
-                        radi = d / 2d;
-                        Logging.debug("REX: diameter overridden by tag diameter={0}", d);
-                    } catch (NumberFormatException ex) {
-                        Logging.warn("REX: failed getting diameter from node tag diameter");
-                        Logging.warn(ex);
-                    }
-                }
-                makeRoundabout(node, radi, lefthandtraffic, maxGap);
-                selectFlareCandidates();
-            }
-        }
-
-        //We have exactly one way selected
-        if (selection.size() == 1
-                && selectedWays.size() == 1
-                ) {
-            Way way = selectedWays.get(0);
-            //And the way is closed (looks like roundabout)
-            if (way.isClosed()) {
-                tagAsRoundabout(way);
-                selectFlareCandidates();
+                makeFlares();
             }
-        }
-
-        //We have some nodes selected
-        //reduce 1 to 0 in the if
-        if (1 < selectedNodes.size()
-                && selection.size() == selectedNodes.size()
-                ) {
+            break;
+        case FLARES:
+        case FLARES_ALL:
             makeFlares();
+            break;
+        default:
+            return;
         }
 
         MainApplication.getMap().mapView.repaint();
     }
 
+    /**
+     * Expand all given mini roundabout nodes to roundabouts.
+     * <p>
+     * All the work is applied as one command, so it can be undone in one step.
+     * Nodes that are not usable mini roundabouts are skipped.
+     * The work runs in the background as an {@link ExpandRoundaboutsTask},
+     * and the new roundabout ways are selected when it is done.
+     *
+     * @param nodes mini roundabout nodes to expand
+     */
+    public void expandAll(Collection<Node> nodes) {
+        DataSet ds = getLayerManager().getEditDataSet();
+        if (ds == null || nodes.isEmpty()) {
+            return;
+        }
+        MainApplication.worker.submit(new ExpandRoundaboutsTask(ds, nodes));
+    }
+
     /**
      * Tag node as roundabout
      * <p>
@@ -160,11 +182,7 @@ public class TagRoundaboutAction extends JosmAction {
      * @param node node
      */
     public void tagAsRoundabout(Node node) {
-        // TODO direction as well?
-        UndoRedoHandler.getInstance().add(new ChangePropertyCommand(node, "junction", "roundabout"));
-        UndoRedoHandler.getInstance().add(new ChangePropertyCommand(node, "highway", "mini_roundabout"));
-        int d = Config.getPref().getInt("rex.diameter_meter", 12);
-        UndoRedoHandler.getInstance().add(new ChangePropertyCommand(node, "diameter", Integer.toString(d)));
+        expander.tagAsRoundabout(node);
     }
 
     /**
@@ -174,27 +192,7 @@ public class TagRoundaboutAction extends JosmAction {
      * @param circle way
      */
     public void tagAsRoundabout(Way circle) {
-        DataSet ds = circle.getDataSet();
-        if (ds == null) {
-            ds = OsmDataManager.getInstance().getEditDataSet();
-        }
-        Map<String, String> tags = new HashMap<>();
-        //Main tag to make a way a roundabout
-        tags.put("junction", "roundabout");
-        //oneway is implicit from junction=roundabout, so not needed
-        //TODO If oneway=-1 then reverse direction of circle before
-        tags.put("oneway", "");
-
-        //If mistagged as a mini_roundabout, remove it
-        if ("mini_roundabout".equals(circle.getKeys().get("highway"))) {
-            tags.put("highway", "");
-        }
-
-        //If not already tagged as highway, tag as road
-        if (!circle.getKeys().containsKey("highway")) {
-            tags.put("highway", "road");
-        }
-        UndoRedoHandler.getInstance().add(new ChangePropertyCommand(ds, Collections.singleton(circle), tags));
+        expander.tagAsRoundabout(circle);
     }
 
     /**
@@ -204,293 +202,10 @@ public class TagRoundaboutAction extends JosmAction {
      * @param radi            Radius of roundabout in meter
      * @param lefthandtraffic Direction of roundabout
      * @param maxGap         Max gap in radians between nodes to make it pretty
+     * @return the new roundabout way
      */
-    public void makeRoundabout(Node node, double radi, boolean lefthandtraffic, double maxGap) {
-        //Store center for later use
-        ILatLon center = node.getCoor();
-
-        //Copy tags from most prominent way.
-        //TODO Prioritize through ways over single ways.
-        List<Way> refWays = new ArrayList<>(Utils.filteredCollection(node.getReferrers(), Way.class));
-        refWays.sort(new HighComp(node));
-        Map<String, String> tagsToCopy = new HashMap<>();
-        if (!refWays.isEmpty()) {
-            tagsToCopy.putAll(refWays.get(0).getKeys());
-        }
-
-        //Remove irrelevant tagging from the node
-        node.remove("highway");
-        node.remove("junction");
-        node.remove("direction");
-        node.remove("diameter");
-        node.remove("oneway");
-
-        //Split all ways using the node
-        splitAll(node);
-
-        //Unglue so the ways at node connected anymore
-        //We'll continue working with the resulting nodes.
-        List<Node> ungroupedNodes = unglueWays(node);
-
-        //Move nodes towards the next node in each way
-        for (Node n : ungroupedNodes) {
-            moveWayEndNodeTowardsNextNode(n, radi);
-        }
-
-        //Always as righthand for the maths below to be correct
-        angularSort(ungroupedNodes, center, false);
-
-        //Construct some nodes to make it pretty.
-        Node fillerNode;
-        double heading1, heading2;
-        int s = ungroupedNodes.size();
-        DataSet ds = OsmDataManager.getInstance().getEditDataSet();
-        for (int i = 0, nextI; i < s; i++) {
-            nextI = i+1;
-            //Reference back to start
-            if (nextI == s) nextI = 0;
-
-            heading1 = -center.bearing(ungroupedNodes.get(i));
-            heading2 = -center.bearing(ungroupedNodes.get(nextI));
-
-            //Add full circle (2PI) to heading2 to "come around" the circle.
-            if (heading1 > heading2 || i == nextI) {
-                heading2 += Math.PI*2;
-            }
-
-            double gap = heading2 - heading1;
-            int fillersToMake = ((int) (gap/maxGap))-1;
-            if (fillersToMake > 0) {
-                double toNext = gap / (fillersToMake+1);
-                double next;
-                for (int j = 1; j <= fillersToMake; j++) {
-                    next = heading1 + toNext * j;
-                    fillerNode = new Node(moveHeadingDistance(center, next, radi));
-                    UndoRedoHandler.getInstance().add(new AddCommand(ds, fillerNode));
-                    ungroupedNodes.add(fillerNode);
-                }
-            }
-        }
-
-        //Sort nodes around the original node. Clockwise if desired.
-        //We do this to avoid funny figure of eight roundabouts.
-        angularSort(ungroupedNodes, center, lefthandtraffic);
-
-        //Create the roundabout way
-        Way newRoundaboutWay = new Way();
-
-        //add the nodes to the way
-        newRoundaboutWay.setNodes(ungroupedNodes);
-
-        //and the first again, closing it
-        newRoundaboutWay.addNode(newRoundaboutWay.firstNode());
-
-        //Paste tagging from the most prominent way
-        newRoundaboutWay.setKeys(tagsToCopy);
-
-        //Add tagging
-        tagAsRoundabout(newRoundaboutWay);
-
-        //Add it to osm
-        UndoRedoHandler.getInstance().add(new AddCommand(ds, newRoundaboutWay));
-
-        //Select it
-        getLayerManager().getEditDataSet().setSelected(newRoundaboutWay);
-
-    }
-
-    /**
-     * Split all ways connected to node
-     * TODO BUG Crashes on circular ways. ALSO MAKE A Circular Way Splitter!
-     */
-    private void splitAll(Node node) {
-        //Find all ways connected to this node
-        List<Way> referedWays = new ArrayList<>(Utils.filteredCollection(node.getReferrers(), Way.class));
-        //Walk through each and check if we are in the middle
-        for (Way from : referedWays) {
-            if (from.isClosed()) {
-                pri("something funky is going to happen. we have a circular way");
-                continue; //to avoid bug
-            }
-            if (from.isFirstLastNode(node)) {
-                //do nothing if node is end of way
-            } else {
-                //split way if node is in the middle
-                UndoRedoHandler.getInstance().add(SplitWayCommand.split(
-                        from,
-                        Collections.singletonList(node),
-                        Collections.<OsmPrimitive>emptyList()
-                        ));
-            }
-        }
-    }
-
-    /**
-     * Unglue all ways using the selectedNode and return the set of new nodes
-     *
-     * @param Node selectedNode The original node
-     *
-     * @return The list of new nodes
-     */
-    private List<Node> unglueWays(Node selectedNode) {
-        List<Node> newNodes = new LinkedList<>();
-
-        Way wayWithSelectedNode = null;
-        LinkedList<Way> parentWays = new LinkedList<>();
-        //if (selectedNode.getReferrers().size() > 1)
-        for (OsmPrimitive osm : selectedNode.getReferrers()) {
-            if (osm.isUsable() && osm instanceof Way) {
-                Way w = (Way) osm;
-                if (wayWithSelectedNode == null && !w.isFirstLastNode(selectedNode)) {
-                    pri("wayWithSelected");
-                    wayWithSelectedNode = w;
-                } else {
-                    parentWays.add(w);
-                }
-            }
-        }
-        //Why?
-        if (wayWithSelectedNode == null && !parentWays.isEmpty()) {
-            parentWays.removeFirst();
-        }
-        //Then actually unglue each parent way
-        for (Way w : parentWays) {
-            UndoRedoHandler.getInstance().add(new ChangeCommand(w, modifyWay(selectedNode, w, newNodes)));
-        }
-
-        //Add the original node to newNodes to be selected
-        newNodes.add(selectedNode);
-
-        return newNodes;
-    }
-
-    /**
-     * Sub method of unglueWays.
-     * <p>
-     * Creates a new version of originalWay,
-     * with originalNode replaced with a duplicate of it.
-     * <p>
-     * We assume that OrginalNode is in the way.
-     * <p>
-     * We also put the new node into newNodes.
-     */
-    private static Way modifyWay(Node originalNode, Way originalWay, List<Node> newNodes) {
-        // clone the node for the way
-        Node newNode = new Node(originalNode, true /* clear OSM ID */);
-        newNodes.add(newNode);
-        UndoRedoHandler.getInstance().add(new AddCommand(OsmDataManager.getInstance().getEditDataSet(), newNode));
-
-        List<Node> nn = new ArrayList<>();
-        for (Node pushNode : originalWay.getNodes()) {
-            if (originalNode == pushNode) {
-                pushNode = newNode;
-            }
-            nn.add(pushNode);
-        }
-        Way newWay = new Way(originalWay);
-        newWay.setNodes(nn);
-
-        return newWay;
-    }
-
-    /**
-     * Sort nodes angular in relation to center
-     *
-     * @param nodes nodes
-     * @param center center
-     * @param clockwise clockwise?
-     */
-    private static void angularSort(List<Node> nodes, ILatLon center, boolean clockwise) {
-        nodes.sort(new AngComp(center));
-        //Reverse if we dont want it clockwise
-        if (!clockwise) {
-            Collections.reverse(nodes);
-        }
-    }
-
-    /**
-     * A comparator that may be used to sort Nodes by angle
-     * relative to center.
-     * The comparator returns true if a Node is
-     * clockwise to b relative to center
-     */
-    static class AngComp implements Comparator<Node> {
-
-        /**
-         * To hold center Node
-         */
-        private final ILatLon center;
-
-        /**
-         * Constructor with center specified
-         */
-        AngComp(ILatLon center) {
-            this.center = center;
-        }
-
-        /**
-         * Constructor with center specified
-         * @deprecated since 2023-08-22, use {@link AngComp#AngComp(ILatLon)} instead
-         */
-        @Deprecated
-        AngComp(LatLon center) {
-            this((ILatLon) center);
-        }
-
-        @Override
-        public int compare(Node a, Node b) {
-            double ah = center.bearing(a);
-            double bh = center.bearing(b);
-            if (ah == bh) return 0;
-            return (ah > bh) ? 1 : -1;
-        }
-
-    } //END AngComp
-
-    /**
-     * A comparator that may be used to sort Ways by beefyness
-     * relative to node.
-     * The comparator returns 1, 0 or -1
-     */
-    static class HighComp implements Comparator<Way> {
-
-        /**
-         * Constructor with center specified
-         */
-        HighComp(Node reference) {
-        }
-
-        @Override
-        public int compare(Way a, Way b) {
-            List<String> rankList = new ArrayList<>();
-            rankList.add("motorway");
-            rankList.add("motorway_link");
-            rankList.add("trunk");
-            rankList.add("trunk_link");
-            rankList.add("primary");
-            rankList.add("primary_link");
-            rankList.add("secondary");
-            rankList.add("secondary_link");
-            rankList.add("tertiary");
-            rankList.add("unclassified");
-            rankList.add("residential");
-            rankList.add("service");
-            rankList.add("track");
-            rankList.add("cycleway");
-            rankList.add("footway");
-            rankList.add("path");
-            rankList.add("road");
-            rankList.add("construction");
-
-            //reverse so that 'not found' (-1) comes last
-            Collections.reverse(rankList);
-
-            //TODO don't crash if missing highway tag
-            String ahigh = a.getKeys().get("highway");
-            String bhigh = b.getKeys().get("highway");
-
-            return Integer.compare(rankList.indexOf(bhigh), rankList.indexOf(ahigh));
-        }
+    public Way makeRoundabout(Node node, double radi, boolean lefthandtraffic, double maxGap) {
+        return expander.makeRoundabout(node, radi, lefthandtraffic, maxGap);
     }
 
     /**
@@ -501,16 +216,7 @@ public class TagRoundaboutAction extends JosmAction {
      * @param distance Distance to move node in meter
      */
     public boolean moveWayEndNodeTowardsNextNode(Node node, double distance) {
-        //some verification:
-        List<Way> referedWays = new ArrayList<>(Utils.filteredCollection(node.getReferrers(), Way.class));
-
-        //node must be member of exactly one way
-        if (referedWays.size() != 1) {
-            //pri("node is not member of exactly one way");
-            return false;
-        } else {
-            return moveWayEndNodeTowardsNextNode(node, distance, referedWays.get(0));
-        }
+        return expander.moveWayEndNodeTowardsNextNode(node, distance);
     }
 
     /**
@@ -522,51 +228,7 @@ public class TagRoundaboutAction extends JosmAction {
      * @param way      Way
      */
     public boolean moveWayEndNodeTowardsNextNode(Node node, double distance, Way way) {
-        //Node must be first or last node in way
-        if (!way.isFirstLastNode(node)) {
-            //pri("not first or last node in way");
-            return false;
-        }
-
-        //Way must be at least two nodes long
-        if (way.getNodesCount() < 2) {
-            //pri("fewer than two nodes");
-            return false;
-        }
-
-        //Find heading to next node
-        Node ajacentNode = way.getNeighbours(node).iterator().next();
-        double heading = -node.bearing(ajacentNode);
-
-        //Move the node towards the next node
-        LatLon newpos = moveHeadingDistance(node, heading, distance);
-        node.setCoor(newpos);
-
-        return true;
-    }
-
-    /**
-     * Return a LatLon moved distance meter in heading from start
-     *
-     * @param start point
-     * @param heading in radians
-     * @param distance in Meter
-     *
-     * @return LatLon New position
-     */
-    private static LatLon moveHeadingDistance(ILatLon start, double heading, double distance) {
-        double earthRadius = 6_378_100; //Radius of the Earth in meters
-
-        double lat1 = Math.toRadians(start.lat());
-        double lon1 = Math.toRadians(start.lon());
-
-        double lat2 = Math.asin(Math.sin(lat1) * Math.cos(distance / earthRadius) +
-                Math.cos(lat1) * Math.sin(distance / earthRadius) * Math.cos(heading));
-
-        double lon2 = lon1 + Math.atan2(Math.sin(heading) * Math.sin((distance * -1) / earthRadius) * Math.cos(lat1),
-                Math.cos(distance / earthRadius) - Math.sin(lat1) * Math.sin(lat2));
-
-        return new LatLon(Math.toDegrees(lat2), Math.toDegrees(lon2));
+        return expander.moveWayEndNodeTowardsNextNode(node, distance, way);
     }
 
     /**
@@ -575,122 +237,67 @@ public class TagRoundaboutAction extends JosmAction {
      * @param str Message
      */
     public void pri(String str) {
-        Notification t = new Notification(str);
-        t.setIcon(JOptionPane.WARNING_MESSAGE);
-        t.setDuration(Notification.TIME_SHORT);
-        t.show();
-        Logging.warn(str);
+        NotifyingExpander.showWarning(str);
     }
 
     public boolean selectFlareCandidates() {
-        Collection<OsmPrimitive> selection = getLayerManager().getEditDataSet().getSelected();
-        List<Way> selectedWays = new ArrayList<>(Utils.filteredCollection(selection, Way.class));
+        DataSet ds = getLayerManager().getEditDataSet();
+        Collection<OsmPrimitive> selection = ds.getAllSelected();
         //pri("Selecting flare candidates");
 
         //We have exactly one way selected
         if (selection.size() == 1
-                && selectedWays.size() == 1
+                && selection.iterator().next() instanceof Way
                 ) {
-            Way way = selectedWays.get(0);
+            Way way = (Way) selection.iterator().next();
             //And the way is closed (looks like roundabout)
-            if (way.isClosed()) {
-                if ("roundabout".equals(way.getKeys().get("junction"))) {
-                    List<Node> nodes = way.getNodes();
-                    List<Node> nodes2 = new ArrayList<>();
-                    List<Way> refWays;
-                    for (Node node : nodes) {
-                        refWays = new ArrayList<>(Utils.filteredCollection(node.getReferrers(), Way.class));
-                        for (Way hmmway : refWays) {
-                            if (hmmway.isFirstLastNode(node)
-                                    && hmmway != way
-                                    && !"yes".equals(hmmway.getKeys().get("oneway"))
-                                    ) {
-                                nodes2.add(node);
-                            }
-                        }
-                    }
-                    getLayerManager().getEditDataSet().setSelected(nodes2);
-                    return true;
-                } else {
-                    return false;
-                }
-            } else {
-                return false;
+            if (way.isClosed() && "roundabout".equals(way.get("junction"))) {
+                ds.setSelected(EditLayerIndex.get(ds).getFlareCandidates(way));
+                return true;
             }
-        } else {
-            return false;
         }
+        return false;
     }
 
     /**
-     * Make flares.
+     * Make flares on the selected nodes.
      * <p>
-     *       split way at the next node
-     *       determine direction of the connected roundabout way
-     *       along the roundabout, create a new node half the distance to the next node in both directions
-     *       those two nodes become the end nodes of the two node way according to direction
-     *       tag the flare(oneway=yes)
-     *       split the flare at the outer node
+     * If not only nodes are selected, flares are made on all the selected
+     * roundabouts instead, as one command.
+     *
+     * @see RoundaboutExpander#makeFlares(Collection)
+     * @see RoundaboutExpander#makeFlaresOnRoundabouts(Collection)
      */
     public boolean makeFlares() {
-        Collection<OsmPrimitive> selection = getLayerManager().getEditDataSet().getSelected();
+        DataSet ds = getLayerManager().getEditDataSet();
+        Collection<OsmPrimitive> selection = ds.getSelected();
         List<Node> selectedNodes = new ArrayList<>(Utils.filteredCollection(selection, Node.class));
-
-        //We have a reasonable amount of nodes selected
-        if (!selectedNodes.isEmpty()
-                && 10 > selectedNodes.size()
-                && selection.size() == selectedNodes.size()
-                ) {
-            Set<Way> commonWays = findCommonWays(selectedNodes);
-            if (commonWays.size() == 1) {
-                Way tWay = commonWays.iterator().next();
-                for (Node cNode : selectedNodes) {
-                    List<Way> iWayCandidates = new ArrayList<>(Utils.filteredCollection(cNode.getReferrers(), Way.class));
-                    if (iWayCandidates.size() == 2) {
-                        for (Way iWay : iWayCandidates) {
-                            if (iWay != tWay) {
-                                makeFlare(iWay, tWay, cNode);
-                            }
-                        }
-                    }
-                }
-                getLayerManager().getEditDataSet().setSelected(tWay);
-                return true;
-            } //else {
-            // There was no one common way
-            // TODO perhaps look in the set for a closed or roundabout?
-            //if (w.isClosed() && w.getKeys().get("junction").equals("roundabout")) {
-            //}
-            /*
-            for (Way w : OsmPrimitive.getFilteredList(selectedNodes.get(0).getReferrers(), Node.class)) {
-             */
+        if (selection.size() != selectedNodes.size()) {
+            return makeFlaresOnRoundabouts(ds, selection);
         }
-        return false;
+        Way tWay = expander.makeFlares(selectedNodes);
+        if (tWay == null) {
+            return false;
+        }
+        ds.setSelected(tWay);
+        return true;
     }
 
     /**
-     * Find a set of ways that all nodes are a member of
+     * Make flares on all roundabouts in selection
      */
-    private static Set<Way> findCommonWays(List<Node> nodes) {
-        Set<Way> ret = new HashSet<>();
-
-        //We examine the referring ways of one of nodes
-        Node n = nodes.get(0);
-        List<Way> nodeReferringWays = new ArrayList<>(Utils.filteredCollection(n.getReferrers(), Way.class));
-        for (Way referredWay : nodeReferringWays) {
-            //if all nodes are a member
-            if (wayContainsAllNodes(referredWay, nodes)) {
-                ret.add(referredWay);
+    private boolean makeFlaresOnRoundabouts(DataSet ds, Collection<OsmPrimitive> selection) {
+        List<Way> roundabouts = new ArrayList<>();
+        for (Way way : Utils.filteredCollection(selection, Way.class)) {
+            if (way.isUsable() && way.isClosed() && RoundaboutIndex.isRoundabout(way)) {
+                roundabouts.add(way);
             }
         }
-
-        return ret;
-    }
-
-    private static boolean wayContainsAllNodes(Way way, List<Node> nodes) {
-        for (Node node : nodes) {
-            if (!way.containsNode(node)) return false;
+        List<Way> done = expander.makeFlaresOnRoundabouts(roundabouts);
+        if (done.isEmpty()) {
+            return false;
         }
+        ds.setSelected(done);
         return true;
     }
 
@@ -702,75 +309,8 @@ public class TagRoundaboutAction extends JosmAction {
      * @return boolean Success
      */
     public boolean makeFlare(Way iWay, Way tWay, Node cNode) {
-        //pri("making flare on "+cNode);
-        int flareLength = 6; //meter
-        int direction = -1; //One arm of the flare will be connected to the next node
-
-        if (iWay.isFirstLastNode(cNode) && tWay.containsNode(cNode)
-                //iWay must be >1 tWay > 2
-                ) {
-            //Carry on
-        } else {
-            //cNode is not common for iWay and tWay
-            return false;
-        }
-
-        //Unglue cNode from tWay
-        List<Node> a = new LinkedList<>();
-        UndoRedoHandler.getInstance().add(new ChangeCommand(iWay, modifyWay(cNode, iWay, a)));
-        Node iWayNewNode = a.get(0);
-
-        //Move iWayNewNode towards ajacent node in iWay
-        if (!moveWayEndNodeTowardsNextNode(iWayNewNode, flareLength, iWay)) return false;
-
-        //Find relevant nodes for flare
-        Node fs = iWayNewNode;
-        Node fn1 = cNode;
-
-        //Find the next node in tWay
-        int newPos = tWay.getNodes().indexOf(cNode) + direction;
-        if (tWay.isClosed()) {
-            //Closed
-            //  0 1 2 3 4  0=4
-            if (newPos < 0) newPos += tWay.getRealNodesCount();
-            if (newPos >= tWay.getNodesCount()) newPos = 0;
-        } else {
-            //Open
-            // 0 1 2 3
-            if (newPos < 0) newPos += tWay.getRealNodesCount();
-            if (newPos >= tWay.getNodesCount()) newPos = 0;
-        }
-        Node fn2 = tWay.getNodes().get(newPos);
-
-        //Create flare ways
-        Way flareWay1 = new Way();
-        Way flareWay2 = new Way();
-
-        //add the nodes to the way
-        flareWay1.addNode(fs);
-        flareWay1.addNode(fn1);
-
-        flareWay2.addNode(fn2);
-        flareWay2.addNode(fs);
-
-        //Copy tagging from iWay
-        Map<String, String> tagsToCopy = iWay.getKeys();
-        flareWay1.setKeys(tagsToCopy);
-        flareWay2.setKeys(tagsToCopy);
-
-        flareWay1.put("oneway", "yes");
-        flareWay2.put("oneway", "yes");
-
-        flareWay1.put("oneway_type", "roundabout_flare");
-        flareWay2.put("oneway_type", "roundabout_flare");
-
-        //Add them to osm
-        DataSet ds = OsmDataManager.getInstance().getEditDataSet();
-        UndoRedoHandler.getInstance().add(new AddCommand(ds, flareWay1));
-        UndoRedoHandler.getInstance().add(new AddCommand(ds, flareWay2));
-
-        return true;
-    } //end method makeFlare
+        return expander.makeFlare(iWay, tWay, cNode);
+    }
 } //end class TagRoundaboutAction
 
 //EOF
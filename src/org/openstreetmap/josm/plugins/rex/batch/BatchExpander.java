@@ -0,0 +1,237 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.Compression;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.OsmPbfReader;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.io.OsmWriter;
+import org.openstreetmap.josm.io.OsmWriterFactory;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.IPreferences;
+import org.openstreetmap.josm.spi.preferences.MemoryPreferences;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Expands roundabouts in an OSM file, without the JOSM user interface.
+ * <p>
+ * Every highway=mini_roundabout node is expanded to a roundabout,
+ * and flares are made where possible. Each junction is applied on its own
+ * and the commands are not kept, so memory use is that of the data set.
+ * <p>
+ * Run with JOSM and rex on the class path:
+ * <pre>
+ * java -cp josm.jar:rex.jar org.openstreetmap.josm.plugins.rex.batch.BatchExpander in.osm.pbf out.osm [options]
+ * </pre>
+ * The preferences of a JOSM install are not read. The defaults are used,
+ * unless changed with the options, see {@link #USAGE}.
+ *
+ * @author Gorm
+ */
+public class BatchExpander {
+
+    /**
+     * Command line help
+     */
+    static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: BatchExpander <input.osm|input.osm.pbf> <output.osm> [options]",
+            "  --no-flares             do not make flares",
+            "  --diameter=<m>          largest diameter, default 12",
+            "  --no-auto-diameter      do not make rings smaller to keep clear of nearby features",
+            "  --clearance=<m>         distance to keep from nearby features, default 1.5",
+            "  --min-diameter=<m>      smallest diameter when keeping clear, default 4",
+            "  --left-hand             clockwise roundabouts",
+            "  --max-chord-error=<m>   largest distance between a ring segment and the circle, default 0.3",
+            "  --max-ring-nodes=<n>    most nodes in a ring, default 48",
+            "  --max-gap-degrees=<d>   largest angle between ring nodes, default no limit");
+
+    /**
+     * Executes each command right away, nothing goes to an undo stack
+     */
+    private final RoundaboutExpander expander = new RoundaboutExpander(Command::executeCommand);
+
+    /**
+     * Make flares after expanding
+     */
+    private final boolean flares;
+
+    /**
+     * Constructor
+     * @param flares true to make flares on the new roundabouts
+     */
+    public BatchExpander(boolean flares) {
+        this.flares = flares;
+    }
+
+    /**
+     * Expand all mini roundabouts in ds
+     * <p>
+     * A junction that fails is logged and left as it was.
+     *
+     * @param ds data set to change
+     * @return number of roundabouts made
+     */
+    public int process(DataSet ds) {
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : ds.getNodes()) {
+            if (node.isUsable() && RoundaboutExpander.isMiniRoundabout(node)) {
+                nodes.add(node);
+            }
+        }
+        int count = 0;
+        for (Node node : nodes) {
+            try {
+                double radius = RoundaboutExpander.getRadius(node);
+                Way roundabout = expander.makeRoundabout(node, radius,
+                        RoundaboutExpander.isLeftHandTraffic(node), RoundaboutExpander.getMaxGap(radius));
+                count++;
+                if (flares) {
+                    List<Node> candidates = RoundaboutExpander.findFlareCandidates(roundabout);
+                    if (!candidates.isEmpty()) {
+                        expander.makeFlares(candidates);
+                    }
+                }
+            } catch (RuntimeException e) {
+                Logging.warn("REX: failed expanding node {0}", node.getUniqueId());
+                Logging.warn(e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read an .osm or .osm.pbf file, which may be compressed
+     * @param file file to read
+     * @return the data
+     * @throws IOException if reading fails
+     * @throws IllegalDataException if the data is broken
+     */
+    public static DataSet read(File file) throws IOException, IllegalDataException {
+        try (InputStream in = Compression.getUncompressedFileInputStream(file)) {
+            if (file.getName().endsWith(".pbf")) {
+                return OsmPbfReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+            }
+            return OsmReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+    }
+
+    /**
+     * Write data to an .osm file, compressed if the name says so
+     * @param ds data to write
+     * @param file file to write
+     * @throws IOException if writing fails
+     */
+    public static void write(DataSet ds, File file) throws IOException {
+        try (OutputStream out = Compression.getCompressedFileOutputStream(file);
+             OsmWriter w = OsmWriterFactory.createOsmWriter(
+                     new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), false, ds.getVersion())) {
+            w.write(ds);
+        }
+    }
+
+    /**
+     * Expand roundabouts in a file
+     * @param args input file, output file, and options, see {@link #USAGE}
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        //Just enough of JOSM for commands to work, with the settings from the options only
+        MemoryPreferences prefs = new MemoryPreferences();
+        boolean flares;
+        try {
+            flares = parseOptions(args, prefs);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        Config.setPreferencesInstance(prefs);
+        ProjectionRegistry.setProjection(Projections.getProjectionByCode("EPSG:3857"));
+
+        try {
+            DataSet ds = read(new File(args[0]));
+            int count = new BatchExpander(flares).process(ds);
+            write(ds, new File(args[1]));
+            Logging.info("REX: expanded {0} roundabouts", count);
+        } catch (IOException | IllegalDataException e) {
+            Logging.error(e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Put the options after the file names into prefs
+     * @param args  command line arguments
+     * @param prefs preferences to set
+     * @return false if --no-flares is given
+     * @throws IllegalArgumentException if an option is not known or its value is not a number
+     */
+    static boolean parseOptions(String[] args, IPreferences prefs) {
+        boolean flares = true;
+        for (int i = 2; i < args.length; i++) {
+            String arg = args[i];
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            try {
+                switch (name) {
+                case "--no-flares":
+                    flares = false;
+                    break;
+                case "--no-auto-diameter":
+                    prefs.putBoolean("rex.auto_diameter", false);
+                    break;
+                case "--left-hand":
+                    prefs.putBoolean("mappaint.lefthandtraffic", true);
+                    break;
+                case "--diameter":
+                    prefs.putInt("rex.diameter_meter", Integer.parseInt(value));
+                    break;
+                case "--clearance":
+                    prefs.putDouble("rex.clearance_meter", Double.parseDouble(value));
+                    break;
+                case "--min-diameter":
+                    prefs.putDouble("rex.min_diameter_meter", Double.parseDouble(value));
+                    break;
+                case "--max-chord-error":
+                    prefs.putDouble("rex.max_chord_error", Double.parseDouble(value));
+                    break;
+                case "--max-ring-nodes":
+                    prefs.putInt("rex.max_ring_nodes", Integer.parseInt(value));
+                    break;
+                case "--max-gap-degrees":
+                    prefs.putInt("rex.max_gap_degrees", Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad value for " + name + ": " + value, e);
+            }
+        }
+        return flares;
+    }
+}
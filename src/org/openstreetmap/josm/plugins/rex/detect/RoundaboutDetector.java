@@ -0,0 +1,205 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.detect;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.geometry.CircleFit;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * Finds closed highways that look like roundabouts but are not tagged
+ * junction=roundabout.
+ * <p>
+ * Each way gets a score from 0 to 1, the product of:
+ * <ul>
+ * <li>how well a least squares circle fits its nodes,</li>
+ * <li>how many of the highways on it end there, rather than cross it.</li>
+ * </ul>
+ * Ways with a fitted radius outside the allowed range, with fewer than
+ * three approaches, or tagged to be driven both ways, are not candidates.
+ * <p>
+ * Scoring only reads the data, so the ways of a layer are scored in
+ * parallel on the common fork join pool. An instance holds the settings
+ * only and may be shared between threads.
+ *
+ * @author Gorm
+ */
+public class RoundaboutDetector {
+
+    /**
+     * Ways scored by one task before it is split
+     */
+    private static final int TASK_SIZE = 128;
+
+    private final double minRadius;
+    private final double maxRadius;
+    private final double minScore;
+
+    /**
+     * A way that looks like a roundabout
+     */
+    public static final class Candidate {
+        /** The closed way */
+        public final Way way;
+        /** Score from 0 to 1, higher is rounder and better connected */
+        public final double score;
+        /** Radius of the fitted circle in meter */
+        public final double radius;
+
+        Candidate(Way way, double score, double radius) {
+            this.way = way;
+            this.score = score;
+            this.radius = radius;
+        }
+    }
+
+    /**
+     * Constructor, with the settings from the preferences
+     */
+    public RoundaboutDetector() {
+        this(Config.getPref().getDouble("rex.detect.min_radius", 4),
+                Config.getPref().getDouble("rex.detect.max_radius", 100),
+                Config.getPref().getDouble("rex.detect.min_score", 0.85));
+    }
+
+    /**
+     * Constructor
+     * @param minRadius smallest radius in meter of a roundabout
+     * @param maxRadius largest radius in meter of a roundabout
+     * @param minScore  least score for a way to be a candidate
+     */
+    public RoundaboutDetector(double minRadius, double maxRadius, double minScore) {
+        this.minRadius = minRadius;
+        this.maxRadius = maxRadius;
+        this.minScore = minScore;
+    }
+
+    /**
+     * Find all candidates in a data set
+     * @param ds data set
+     * @return the candidates, best score first
+     */
+    public List<Candidate> detect(DataSet ds) {
+        List<Candidate> found;
+        ds.getReadLock().lock();
+        try {
+            List<Way> ways = new ArrayList<>();
+            for (Way way : ds.getWays()) {
+                if (way.isUsable() && isClosedHighway(way)) {
+                    ways.add(way);
+                }
+            }
+            found = ForkJoinPool.commonPool().invoke(new DetectTask(ways.toArray(new Way[0]), 0, ways.size()));
+        } finally {
+            ds.getReadLock().unlock();
+        }
+        found.sort(Comparator.comparingDouble((Candidate c) -> c.score).reversed());
+        return found;
+    }
+
+    /**
+     * Score a way
+     * @param way way
+     * @return the way as candidate, or null if it does not look like a roundabout
+     */
+    public Candidate score(Way way) {
+        if (!isClosedHighway(way) || way.getRealNodesCount() < 5 || way.hasTag("oneway", "no")) {
+            return null;
+        }
+
+        //How well a circle fits
+        int n = way.getNodesCount() - 1;
+        LocalFrame frame = new LocalFrame(way.firstNode());
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            Node node = way.getNode(i);
+            x[i] = frame.x(node);
+            y[i] = frame.y(node);
+        }
+        CircleFit circle = CircleFit.fit(x, y, n);
+        if (circle == null || circle.r < minRadius || circle.r > maxRadius) {
+            return null;
+        }
+        double fit = Math.max(0, 1 - circle.rms / (0.1 * circle.r));
+
+        //Highways should end on it, not cross it
+        int approaches = 0;
+        int crossings = 0;
+        for (int i = 0; i < n; i++) {
+            Node node = way.getNode(i);
+            for (OsmPrimitive referrer : node.getReferrers()) {
+                if (referrer instanceof Way && referrer != way && referrer.isUsable() && referrer.hasKey("highway")) {
+                    if (((Way) referrer).isFirstLastNode(node)) {
+                        approaches++;
+                    } else {
+                        crossings++;
+                    }
+                }
+            }
+        }
+        if (approaches < 3) {
+            return null;
+        }
+        double score = fit * approaches / (approaches + crossings);
+        return score < minScore ? null : new Candidate(way, score, circle.r);
+    }
+
+    /**
+     * @return true if way is a closed highway, not an area, and not tagged junction already
+     */
+    private static boolean isClosedHighway(Way way) {
+        return way.isClosed() && way.hasKey("highway") && !way.hasKey("junction") && !way.hasTag("area", "yes");
+    }
+
+    /**
+     * Scores a range of ways, splitting it when large
+     */
+    private class DetectTask extends RecursiveTask<List<Candidate>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Way[] ways;
+        private final int from;
+        private final int to;
+
+        DetectTask(Way[] ways, int from, int to) {
+            this.ways = ways;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Candidate> compute() {
+            if (to - from <= TASK_SIZE) {
+                List<Candidate> found = new ArrayList<>();
+                for (int i = from; i < to; i++) {
+                    Candidate c = score(ways[i]);
+                    if (c != null) {
+                        found.add(c);
+                    }
+                }
+                return found;
+            }
+            int middle = (from + to) >>> 1;
+            DetectTask left = new DetectTask(ways, from, middle);
+            left.fork();
+            List<Candidate> found = new DetectTask(ways, middle, to).compute();
+            List<Candidate> leftFound = left.join();
+            if (found.isEmpty()) {
+                return leftFound;
+            }
+            leftFound.addAll(found);
+            return leftFound;
+        }
+    }
+}
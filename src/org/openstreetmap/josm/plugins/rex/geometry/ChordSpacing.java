@@ -0,0 +1,59 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.geometry;
+
+/**
+ * How close together the nodes of a circle need to be.
+ * <p>
+ * A straight segment between two nodes on a circle deviates most from the
+ * arc at its middle, by r(1 - cos(angle / 2)). Keeping that below a
+ * distance in meter gives small circles few nodes and large circles many,
+ * so all look equally round on the map.
+ *
+ * @author Gorm
+ */
+public final class ChordSpacing {
+
+    private static final double TWO_PI = Math.PI * 2;
+
+    private ChordSpacing() {
+        // Hide default constructor
+    }
+
+    /**
+     * Largest angle between nodes on a circle
+     * @param radius   radius in meter
+     * @param maxError largest distance in meter between a segment and the arc
+     * @param maxNodes most nodes to spend on a full circle
+     * @return max gap in radians, at most PI / 2
+     */
+    public static double maxGap(double radius, double maxError, int maxNodes) {
+        double gap = maxError >= radius ? Math.PI : 2 * Math.acos(1 - maxError / radius);
+        if (maxNodes > 0) {
+            gap = Math.max(gap, TWO_PI / maxNodes);
+        }
+        return Math.min(gap, Math.PI / 2);
+    }
+
+    /**
+     * Largest angle between nodes on a circle, with an upper bound on it
+     * @param radius   radius in meter
+     * @param maxError largest distance in meter between a segment and the arc
+     * @param maxNodes most nodes to spend on a full circle
+     * @param maxAngle largest gap in radians whatever the size, 0 for no bound
+     * @return max gap in radians
+     */
+    public static double maxGap(double radius, double maxError, int maxNodes, double maxAngle) {
+        double gap = maxGap(radius, maxError, maxNodes);
+        return maxAngle > 0 ? Math.min(gap, maxAngle) : gap;
+    }
+
+    /**
+     * Number of nodes needed inside an arc so no gap is larger than maxGap
+     * @param gap    angle of the arc in radians
+     * @param maxGap largest angle between nodes in radians
+     * @return number of nodes to add between the ends of the arc
+     */
+    public static int fillers(double gap, double maxGap) {
+        return Math.max(0, (int) Math.ceil(gap / maxGap - 1e-9) - 1);
+    }
+}
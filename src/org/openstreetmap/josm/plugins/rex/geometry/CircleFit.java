@@ -0,0 +1,106 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.geometry;
+
+/**
+ * Least squares circle through points in a plane.
+ * <p>
+ * Uses the algebraic fit of Kasa: minimize the sum of
+ * (x^2 + y^2 + Dx + Ey + F)^2, which is a linear 3x3 system.
+ * The points are moved to their centroid first, to keep the numbers small.
+ *
+ * @author Gorm
+ */
+public final class CircleFit {
+
+    /** Center, in the same unit as the points */
+    public final double cx;
+    public final double cy;
+    /** Radius */
+    public final double r;
+    /** Root mean square of the distance of the points from the circle */
+    public final double rms;
+
+    private CircleFit(double cx, double cy, double r, double rms) {
+        this.cx = cx;
+        this.cy = cy;
+        this.r = r;
+        this.rms = rms;
+    }
+
+    /**
+     * Fit a circle to the first n points
+     * @param x x of the points
+     * @param y y of the points
+     * @param n number of points to use
+     * @return the circle, or null if there are fewer than 3 points or they are on a line
+     */
+    public static CircleFit fit(double[] x, double[] y, int n) {
+        return fit(x, y, 0, n);
+    }
+
+    /**
+     * Fit a circle to the points from index from, inclusive, to index to, exclusive.
+     * <p>
+     * Lets many rings be kept one after another in the same arrays.
+     * @param x    x of the points
+     * @param y    y of the points
+     * @param from first point to use
+     * @param to   end of the points to use
+     * @return the circle, or null if there are fewer than 3 points or they are on a line
+     */
+    public static CircleFit fit(double[] x, double[] y, int from, int to) {
+        int n = to - from;
+        if (n < 3) {
+            return null;
+        }
+        double mx = 0;
+        double my = 0;
+        for (int i = from; i < to; i++) {
+            mx += x[i];
+            my += y[i];
+        }
+        mx /= n;
+        my /= n;
+
+        //Sums for the normal equations, around the centroid
+        double suu = 0;
+        double svv = 0;
+        double suv = 0;
+        double suuu = 0;
+        double svvv = 0;
+        double suvv = 0;
+        double svuu = 0;
+        for (int i = from; i < to; i++) {
+            double u = x[i] - mx;
+            double v = y[i] - my;
+            double uu = u * u;
+            double vv = v * v;
+            suu += uu;
+            svv += vv;
+            suv += u * v;
+            suuu += uu * u;
+            svvv += vv * v;
+            suvv += u * vv;
+            svuu += v * uu;
+        }
+        //Solve for the center (uc, vc) relative to the centroid
+        double det = suu * svv - suv * suv;
+        if (Math.abs(det) < 1e-12 * (suu + svv) * (suu + svv)) {
+            return null;
+        }
+        double bu = (suuu + suvv) / 2;
+        double bv = (svvv + svuu) / 2;
+        double uc = (bu * svv - bv * suv) / det;
+        double vc = (bv * suu - bu * suv) / det;
+        double r = Math.sqrt(uc * uc + vc * vc + (suu + svv) / n);
+
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            double du = x[i] - mx - uc;
+            double dv = y[i] - my - vc;
+            double d = Math.sqrt(du * du + dv * dv) - r;
+            sum += d * d;
+        }
+        return new CircleFit(mx + uc, my + vc, r, Math.sqrt(sum / n));
+    }
+}
@@ -0,0 +1,158 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.geometry;
+
+import org.openstreetmap.josm.data.coor.ILatLon;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * A flat East/North plane in meter around an origin.
+ * <p>
+ * A junction is small compared to the Earth, so treating the area around it
+ * as flat is accurate enough and saves doing spherical trigonometry for every node.
+ * The trigonometry is done once, when the frame is made. After that, going to
+ * and from the plane is just multiplication.
+ * <p>
+ * Bearings follow {@link ILatLon#bearing(ILatLon)}: radians from north, clockwise.
+ *
+ * @author Gorm
+ */
+public final class LocalFrame {
+
+    /**
+     * Radius of the Earth in meters
+     */
+    private static final double EARTH_RADIUS = 6_378_100;
+
+    private static final double TWO_PI = Math.PI * 2;
+
+    private final double lat0;
+    private final double lon0;
+    private final double metersPerDegreeLat;
+    private final double metersPerDegreeLon;
+
+    /**
+     * Make a frame centered at origin
+     * @param origin origin of the frame
+     */
+    public LocalFrame(ILatLon origin) {
+        lat0 = origin.lat();
+        lon0 = origin.lon();
+        metersPerDegreeLat = Math.toRadians(EARTH_RADIUS);
+        metersPerDegreeLon = metersPerDegreeLat * Math.cos(Math.toRadians(lat0));
+    }
+
+    /**
+     * @param p point
+     * @return meters east of origin
+     */
+    public double x(ILatLon p) {
+        return (p.lon() - lon0) * metersPerDegreeLon;
+    }
+
+    /**
+     * @param p point
+     * @return meters north of origin
+     */
+    public double y(ILatLon p) {
+        return (p.lat() - lat0) * metersPerDegreeLat;
+    }
+
+    /**
+     * @param y meters north of origin
+     * @return latitude in degrees
+     */
+    public double lat(double y) {
+        return lat0 + y / metersPerDegreeLat;
+    }
+
+    /**
+     * @param x meters east of origin
+     * @return longitude in degrees
+     */
+    public double lon(double x) {
+        return lon0 + x / metersPerDegreeLon;
+    }
+
+    /**
+     * @param x meters east of origin
+     * @param y meters north of origin
+     * @return the position as LatLon
+     */
+    public LatLon toLatLon(double x, double y) {
+        return new LatLon(lat(y), lon(x));
+    }
+
+    /**
+     * @param p point
+     * @return bearing from origin to p
+     */
+    public double bearing(ILatLon p) {
+        return bearing(x(p), y(p));
+    }
+
+    /**
+     * Bearing of a vector in the plane
+     * @param dx meters east
+     * @param dy meters north
+     * @return bearing in radians in the range [0, 2PI)
+     */
+    public static double bearing(double dx, double dy) {
+        double b = Math.atan2(dx, dy);
+        return b < 0 ? b + TWO_PI : b;
+    }
+
+    /**
+     * Return the point distance meter from the origin in bearing
+     * @param bearing  bearing in radians
+     * @param distance distance in meter
+     * @return the position as LatLon
+     */
+    public LatLon atBearing(double bearing, double distance) {
+        return toLatLon(distance * Math.sin(bearing), distance * Math.cos(bearing));
+    }
+
+    /**
+     * Return the position distance meter from start, in the direction of target
+     * @param start    point to move from
+     * @param target   point to move towards
+     * @param distance distance in meter
+     * @return the position as LatLon
+     */
+    public LatLon towards(ILatLon start, ILatLon target, double distance) {
+        double sx = x(start);
+        double sy = y(start);
+        double dx = x(target) - sx;
+        double dy = y(target) - sy;
+        double length = Math.sqrt(dx * dx + dy * dy);
+        if (length == 0) {
+            //No direction, go north
+            return toLatLon(sx, sy + distance);
+        }
+        return toLatLon(sx + dx / length * distance, sy + dy / length * distance);
+    }
+
+    /**
+     * Sort items by their keys, ascending. Both arrays are sorted.
+     * <p>
+     * Meant for the few nodes around a junction, so a plain insertion sort
+     * on the precomputed keys is used. It does not allocate anything.
+     *
+     * @param keys  sort keys, e.g. bearings
+     * @param items items, in the same order as keys
+     * @param <T> type of items
+     */
+    public static <T> void sortByKey(double[] keys, T[] items) {
+        for (int i = 1; i < keys.length; i++) {
+            double key = keys[i];
+            T item = items[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] > key) {
+                keys[j + 1] = keys[j];
+                items[j + 1] = items[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            items[j + 1] = item;
+        }
+    }
+}
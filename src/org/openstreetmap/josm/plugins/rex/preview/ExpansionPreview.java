@@ -0,0 +1,187 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.preview;
+
+import java.util.Arrays;
+
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.geometry.ChordSpacing;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+
+/**
+ * Computes what expanding a mini roundabout would look like, without
+ * touching the data.
+ * <p>
+ * A {@link Snapshot} of the junction is taken first. It only holds numbers,
+ * so {@link #compute} may run on any thread while the data set changes.
+ * The result follows what {@link org.openstreetmap.josm.plugins.rex.RoundaboutExpander}
+ * does: approach ends moved in along their ways, filler nodes in the gaps,
+ * and flares to the previous ring node.
+ *
+ * @author Gorm
+ */
+public final class ExpansionPreview {
+
+    /**
+     * Length of a flare in meter, as in makeFlare
+     */
+    private static final double FLARE_LENGTH = 6;
+
+    private ExpansionPreview() {
+        // Hide default constructor
+    }
+
+    /**
+     * The junction as seen when the preview was started
+     */
+    public static final class Snapshot {
+        final LocalFrame frame;
+        /** Position of the next node along each approach, meters from the center */
+        final double[] x;
+        final double[] y;
+        /** Whether each approach is oneway, and so gets no flare */
+        final boolean[] oneway;
+
+        private Snapshot(LocalFrame frame, double[] x, double[] y, boolean[] oneway) {
+            this.frame = frame;
+            this.x = x;
+            this.y = y;
+            this.oneway = oneway;
+        }
+    }
+
+    /**
+     * What the expanded roundabout would look like, in degrees
+     */
+    public static final class Result {
+        /** The ring, closed, in driving direction */
+        public final double[] ringLat;
+        public final double[] ringLon;
+        /** Flares, three points each: previous ring node, flare node, ring node */
+        public final double[] flareLat;
+        public final double[] flareLon;
+
+        private Result(double[] ringLat, double[] ringLon, double[] flareLat, double[] flareLon) {
+            this.ringLat = ringLat;
+            this.ringLon = ringLon;
+            this.flareLat = flareLat;
+            this.flareLon = flareLon;
+        }
+    }
+
+    /**
+     * Take a snapshot of the junction at node. Must be called where the data may be read.
+     * @param node mini roundabout node
+     * @return the snapshot
+     */
+    public static Snapshot snapshot(Node node) {
+        LocalFrame frame = new LocalFrame(node);
+        int n = 0;
+        double[] x = new double[4];
+        double[] y = new double[4];
+        boolean[] oneway = new boolean[4];
+        for (OsmPrimitive referrer : node.getReferrers()) {
+            if (!(referrer instanceof Way) || !referrer.isUsable()) {
+                continue;
+            }
+            Way way = (Way) referrer;
+            //Each neighbour becomes an approach once the way is split at node
+            for (Node next : way.getNeighbours(node)) {
+                if (n == x.length) {
+                    x = Arrays.copyOf(x, n * 2);
+                    y = Arrays.copyOf(y, n * 2);
+                    oneway = Arrays.copyOf(oneway, n * 2);
+                }
+                x[n] = frame.x(next);
+                y[n] = frame.y(next);
+                oneway[n] = "yes".equals(way.get("oneway"));
+                n++;
+            }
+        }
+        return new Snapshot(frame, Arrays.copyOf(x, n), Arrays.copyOf(y, n), Arrays.copyOf(oneway, n));
+    }
+
+    /**
+     * Compute the expanded roundabout
+     * @param s               snapshot of the junction
+     * @param radius          radius in meter
+     * @param maxGap          max gap between ring nodes in radians
+     * @param lefthandtraffic true for clockwise
+     * @param flares          true to include flares
+     * @return the result
+     */
+    public static Result compute(Snapshot s, double radius, double maxGap, boolean lefthandtraffic, boolean flares) {
+        int n = s.x.length;
+        //Approach ends moved in to the ring, sorted clockwise
+        double[] bearings = new double[n];
+        Integer[] approaches = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            bearings[i] = s.x[i] == 0 && s.y[i] == 0 ? 0 : LocalFrame.bearing(s.x[i], s.y[i]);
+            approaches[i] = i;
+        }
+        LocalFrame.sortByKey(bearings, approaches);
+
+        //The ring with fillers, approach index or -1 for each point
+        int capacity = n + (int) (Math.PI * 2 / maxGap) + 1;
+        double[] rx = new double[capacity];
+        double[] ry = new double[capacity];
+        int[] ra = new int[capacity];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            double bearing1 = bearings[i];
+            double bearing2 = i + 1 < n ? bearings[i + 1] : bearings[0] + Math.PI * 2;
+            double gap = bearing2 - bearing1;
+            int fillersToMake = ChordSpacing.fillers(gap, maxGap);
+            if (m + fillersToMake + 1 > rx.length) {
+                int size = Math.max(rx.length * 2, m + fillersToMake + 1);
+                rx = Arrays.copyOf(rx, size);
+                ry = Arrays.copyOf(ry, size);
+                ra = Arrays.copyOf(ra, size);
+            }
+            rx[m] = radius * Math.sin(bearing1);
+            ry[m] = radius * Math.cos(bearing1);
+            ra[m++] = approaches[i];
+            if (fillersToMake > 0) {
+                double toNext = gap / (fillersToMake + 1);
+                for (int j = 1; j <= fillersToMake; j++) {
+                    rx[m] = radius * Math.sin(bearing1 + toNext * j);
+                    ry[m] = radius * Math.cos(bearing1 + toNext * j);
+                    ra[m++] = -1;
+                }
+            }
+        }
+
+        //Ring in driving direction, closed
+        double[] ringLat = new double[m == 0 ? 0 : m + 1];
+        double[] ringLon = new double[ringLat.length];
+        double[] flareLat = new double[m * 3];
+        double[] flareLon = new double[m * 3];
+        int f = 0;
+        for (int k = 0; k < m; k++) {
+            int i = lefthandtraffic ? k : m - 1 - k;
+            ringLat[k] = s.frame.lat(ry[i]);
+            ringLon[k] = s.frame.lon(rx[i]);
+            int a = ra[i];
+            if (flares && a >= 0 && !s.oneway[a]) {
+                int prev = lefthandtraffic ? (i + m - 1) % m : (i + 1) % m;
+                double dx = s.x[a] - rx[i];
+                double dy = s.y[a] - ry[i];
+                double length = Math.sqrt(dx * dx + dy * dy);
+                double fx = length == 0 ? rx[i] : rx[i] + dx / length * FLARE_LENGTH;
+                double fy = length == 0 ? ry[i] + FLARE_LENGTH : ry[i] + dy / length * FLARE_LENGTH;
+                flareLat[f] = s.frame.lat(ry[prev]);
+                flareLon[f++] = s.frame.lon(rx[prev]);
+                flareLat[f] = s.frame.lat(fy);
+                flareLon[f++] = s.frame.lon(fx);
+                flareLat[f] = ringLat[k];
+                flareLon[f++] = ringLon[k];
+            }
+        }
+        if (m > 0) {
+            ringLat[m] = ringLat[0];
+            ringLon[m] = ringLon[0];
+        }
+        return new Result(ringLat, ringLon, Arrays.copyOf(flareLat, f), Arrays.copyOf(flareLon, f));
+    }
+}
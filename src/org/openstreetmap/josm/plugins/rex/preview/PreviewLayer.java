@@ -0,0 +1,98 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.preview;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Point2D;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.layer.MapViewPaintable;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Draws an {@link ExpansionPreview} on top of the map.
+ * <p>
+ * The preview is computed on a background thread. When a new one is asked
+ * for before the last is done, only the newest is computed.
+ *
+ * @author Gorm
+ */
+public class PreviewLayer implements MapViewPaintable {
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newSingleThreadExecutor(Utils.newThreadFactory("rex-preview-%d", Thread.NORM_PRIORITY));
+
+    private static final Color RING_COLOR = new Color(255, 140, 0, 220);
+    private static final Color FLARE_COLOR = new Color(255, 200, 0, 220);
+
+    private final MapView mapView;
+    private final ExpansionPreview.Snapshot snapshot;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile ExpansionPreview.Result result;
+
+    /**
+     * Constructor
+     * @param mapView  map view to draw on
+     * @param snapshot junction to preview
+     */
+    public PreviewLayer(MapView mapView, ExpansionPreview.Snapshot snapshot) {
+        this.mapView = mapView;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Compute a new preview in the background, and repaint when done
+     * @param radius          radius in meter
+     * @param maxGap          max gap between ring nodes in radians
+     * @param lefthandtraffic true for clockwise
+     * @param flares          true to include flares
+     */
+    public void update(double radius, double maxGap, boolean lefthandtraffic, boolean flares) {
+        long thisGeneration = generation.incrementAndGet();
+        EXECUTOR.execute(() -> {
+            if (thisGeneration != generation.get()) {
+                //A newer one is on its way
+                return;
+            }
+            result = ExpansionPreview.compute(snapshot, radius, maxGap, lefthandtraffic, flares);
+            GuiHelper.runInEDT(mapView::repaint);
+        });
+    }
+
+    @Override
+    public void paint(Graphics2D g, MapView mv, Bounds bbox) {
+        ExpansionPreview.Result r = result;
+        if (r == null) {
+            return;
+        }
+        g.setStroke(new BasicStroke(3, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+        g.setColor(RING_COLOR);
+        g.draw(path(mv, r.ringLat, r.ringLon, 0, r.ringLat.length));
+        g.setStroke(new BasicStroke(2, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 10, new float[] {6, 4}, 0));
+        g.setColor(FLARE_COLOR);
+        for (int i = 0; i + 2 < r.flareLat.length; i += 3) {
+            g.draw(path(mv, r.flareLat, r.flareLon, i, 3));
+        }
+    }
+
+    private static Path2D path(MapView mv, double[] lat, double[] lon, int from, int count) {
+        Path2D.Double path = new Path2D.Double();
+        for (int i = from; i < from + count; i++) {
+            Point2D p = mv.getPoint2D(new LatLon(lat[i], lon[i]));
+            if (i == from) {
+                path.moveTo(p.getX(), p.getY());
+            } else {
+                path.lineTo(p.getX(), p.getY());
+            }
+        }
+        return path;
+    }
+}
@@ -0,0 +1,172 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.stats;
+
+import static org.openstreetmap.josm.tools.I18n.marktr;
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.openstreetmap.josm.command.AddCommand;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.SplitWayCommand;
+
+/**
+ * Cumulative time and counts for each phase of the expansion.
+ * <p>
+ * A phase is timed with a {@link Timer} in a try-with-resources block.
+ * Each timed phase is also recorded as a {@link PhaseEvent} for Java Flight Recorder.
+ * Commands made while a phase runs are counted for the innermost phase
+ * running on the same thread. Phases may nest, the time of a phase
+ * includes the phases within it.
+ * <p>
+ * The counters are safe to update from several threads.
+ *
+ * @author Gorm
+ */
+public final class ExpansionStats {
+
+    /**
+     * The phases that are timed
+     */
+    public enum Phase {
+        PLAN(marktr("Plan roundabouts")),
+        EXPAND(marktr("Expand roundabout")),
+        SPLIT(marktr("Split ways")),
+        UNGLUE(marktr("Unglue ways")),
+        MOVE_ENDS(marktr("Move way ends")),
+        SORT(marktr("Sort by bearing")),
+        FILLERS(marktr("Add filler nodes")),
+        FLARES(marktr("Make flares")),
+        RESIZE(marktr("Resize roundabout")),
+        CIRCULARIZE(marktr("Make roundabouts round")),
+        SUBMIT(marktr("Submit command"));
+
+        private final String description;
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder commands = new LongAdder();
+        final LongAdder primitives = new LongAdder();
+
+        Phase(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return translated description
+         */
+        public String getDescription() {
+            return tr(description);
+        }
+
+        /**
+         * @return number of times the phase ran
+         */
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        /**
+         * @return total time spent in the phase, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        /**
+         * @return number of commands made in the phase
+         */
+        public long getCommands() {
+            return commands.sum();
+        }
+
+        /**
+         * @return number of primitives created in the phase
+         */
+        public long getPrimitives() {
+            return primitives.sum();
+        }
+    }
+
+    /**
+     * The innermost running timer of each thread
+     */
+    private static final ThreadLocal<Timer> CURRENT = new ThreadLocal<>();
+
+    private ExpansionStats() {
+        // Hide default constructor
+    }
+
+    /**
+     * Times a phase until closed
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Phase phase;
+        private final Timer outer;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long start = System.nanoTime();
+        private int commands;
+        private int primitives;
+
+        private Timer(Phase phase, Timer outer) {
+            this.phase = phase;
+            this.outer = outer;
+            event.begin();
+        }
+
+        @Override
+        public void close() {
+            phase.nanos.add(System.nanoTime() - start);
+            phase.calls.increment();
+            phase.commands.add(commands);
+            phase.primitives.add(primitives);
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.commands = commands;
+                event.primitives = primitives;
+                event.commit();
+            }
+            CURRENT.set(outer);
+        }
+    }
+
+    /**
+     * Start timing a phase
+     * @param phase the phase
+     * @return the timer, to be closed when the phase is done
+     */
+    public static Timer start(Phase phase) {
+        Timer timer = new Timer(phase, CURRENT.get());
+        CURRENT.set(timer);
+        return timer;
+    }
+
+    /**
+     * Count a command for the phase running on this thread, if any
+     * @param command the command made
+     */
+    public static void count(Command command) {
+        Timer timer = CURRENT.get();
+        if (timer == null) {
+            return;
+        }
+        timer.commands++;
+        if (command instanceof AddCommand) {
+            timer.primitives += command.getParticipatingPrimitives().size();
+        } else if (command instanceof SplitWayCommand) {
+            timer.primitives += ((SplitWayCommand) command).getNewWays().size();
+        }
+    }
+
+    /**
+     * Set all counters to zero
+     */
+    public static void reset() {
+        for (Phase phase : Phase.values()) {
+            phase.calls.reset();
+            phase.nanos.reset();
+            phase.commands.reset();
+            phase.primitives.reset();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.stats;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one phase of an expansion.
+ * <p>
+ * Only recorded when a recording with this event enabled is running,
+ * otherwise it costs next to nothing.
+ *
+ * @author Gorm
+ */
+@Name("org.openstreetmap.josm.plugins.rex.Phase")
+@Label("Roundabout Expander Phase")
+@Category({"JOSM", "Roundabout Expander"})
+@Description("One phase of expanding a roundabout or making flares")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Commands")
+    @Description("Commands made during the phase")
+    int commands;
+
+    @Label("Primitives")
+    @Description("Primitives created during the phase")
+    int primitives;
+}
@@ -0,0 +1,148 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.validation;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.Severity;
+import org.openstreetmap.josm.data.validation.Test;
+import org.openstreetmap.josm.data.validation.TestError;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.plugins.rex.ExpansionCommand;
+import org.openstreetmap.josm.plugins.rex.ExpansionParameters;
+import org.openstreetmap.josm.plugins.rex.JunctionPlan;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.detect.RoundaboutDetector;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * Finds mini roundabouts that should be expanded, and closed ways that
+ * look like roundabouts but are not tagged as one.
+ * <p>
+ * The primitives are checked in parallel. Closed ways are scored by
+ * {@link RoundaboutDetector}, fixes use {@link RoundaboutExpander}.
+ *
+ * @author Gorm
+ */
+public class RoundaboutTest extends Test {
+
+    /** Mini roundabout with a diameter too large for a mini roundabout */
+    protected static final int MINI_TOO_LARGE = 41_001;
+    /** Closed highway that looks like a roundabout but is not tagged as one */
+    protected static final int NOT_TAGGED_ROUNDABOUT = 41_002;
+
+    /**
+     * Constructor
+     */
+    public RoundaboutTest() {
+        super(tr("Roundabouts"), tr("Finds mini roundabouts that should be expanded and roundabouts that are not tagged as such."));
+    }
+
+    @Override
+    public void visit(Collection<OsmPrimitive> selection) {
+        if (progressMonitor != null) {
+            progressMonitor.setTicksCount(selection.size());
+        }
+        int maxMiniDiameter = Config.getPref().getInt("rex.mini_roundabout_max_diameter", 28);
+        RoundaboutDetector detector = new RoundaboutDetector();
+        List<TestError> found = selection.parallelStream()
+                .filter(this::isPrimitiveUsable)
+                .map(p -> check(p, maxMiniDiameter, detector))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+        errors.addAll(found);
+        if (progressMonitor != null) {
+            progressMonitor.worked(selection.size());
+        }
+    }
+
+    /**
+     * Check one primitive. Only reads the data, so it may run on any thread.
+     */
+    private TestError check(OsmPrimitive p, int maxMiniDiameter, RoundaboutDetector detector) {
+        if (p instanceof Node) {
+            Node node = (Node) p;
+            if (RoundaboutExpander.isMiniRoundabout(node) && getDiameter(node) > maxMiniDiameter) {
+                return TestError.builder(this, Severity.WARNING, MINI_TOO_LARGE)
+                        .message(tr("Mini roundabout too large, should be expanded to a roundabout"))
+                        .primitives(node)
+                        .build();
+            }
+        } else if (p instanceof Way) {
+            Way way = (Way) p;
+            if (detector.score(way) != null) {
+                return TestError.builder(this, Severity.OTHER, NOT_TAGGED_ROUNDABOUT)
+                        .message(tr("Closed highway looks like a roundabout, but is not tagged junction=roundabout"))
+                        .primitives(way)
+                        .build();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return diameter tag of node, 0 if missing or not a number
+     */
+    private static int getDiameter(Node node) {
+        String diameter = node.get("diameter");
+        if (diameter != null) {
+            try {
+                return Integer.parseInt(diameter);
+            } catch (NumberFormatException ex) {
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean isFixable(TestError testError) {
+        return testError.getTester() instanceof RoundaboutTest;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The validator asks for fixes off the event dispatch thread, so the fix
+     * only reads the data: junctions are planned and expanded when the command
+     * is executed, see {@link ExpansionCommand}.
+     */
+    @Override
+    public Command fixError(TestError testError) {
+        if (testError.getCode() == MINI_TOO_LARGE) {
+            List<Node> nodes = new ArrayList<>();
+            DataSet ds = null;
+            for (OsmPrimitive p : testError.getPrimitives()) {
+                if (p.isUsable() && p instanceof Node) {
+                    nodes.add((Node) p);
+                    ds = p.getDataSet();
+                }
+            }
+            if (ds == null) {
+                return null;
+            }
+            List<JunctionPlan> plans = RoundaboutExpander.planAll(ds, nodes, ExpansionParameters.fromPreferences(),
+                    NullProgressMonitor.INSTANCE);
+            return plans.isEmpty() ? null : new ExpansionCommand(ds, plans);
+        }
+        List<Command> commands = new ArrayList<>();
+        //Tagging is handed to the sink as is, without touching the data
+        RoundaboutExpander expander = new RoundaboutExpander(commands::add);
+        for (OsmPrimitive p : testError.getPrimitives()) {
+            if (p.isUsable() && testError.getCode() == NOT_TAGGED_ROUNDABOUT && p instanceof Way) {
+                expander.tagAsRoundabout((Way) p);
+            }
+        }
+        return commands.isEmpty() ? null : commands.get(0);
+    }
+}
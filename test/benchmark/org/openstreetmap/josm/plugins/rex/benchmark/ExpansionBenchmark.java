@@ -0,0 +1,92 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.Clearance;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.SyntheticJunctions;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * Expanding one mini roundabout to a roundabout, for junctions of 3 to 12 ways.
+ * <p>
+ * The commands are only caught, so each expansion is rolled back at the end
+ * of its step and the data set is the same for every invocation. The time
+ * includes that roll back.
+ *
+ * @author Gorm
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpansionBenchmark {
+
+    @Param({"3", "4", "6", "12"})
+    int arms;
+
+    private final List<Command> commands = new ArrayList<>();
+    private final RoundaboutExpander expander = new RoundaboutExpander(commands::add);
+    private List<Node> junctions;
+    private int next;
+
+    @Setup
+    public void setup() {
+        JosmSetup.init();
+        //No clearance search, that is measured on its own
+        Config.getPref().putBoolean("rex.auto_diameter", false);
+        DataSet ds = SyntheticJunctions.junctions(256, arms, 1);
+        junctions = SyntheticJunctions.miniRoundabouts(ds);
+    }
+
+    /**
+     * Take the junctions in turn, so the caches do not see the same one every time
+     */
+    private Node nextJunction() {
+        Node node = junctions.get(next);
+        next = (next + 1) % junctions.size();
+        return node;
+    }
+
+    @Benchmark
+    public Way makeRoundabout() {
+        commands.clear();
+        return expander.makeRoundabout(nextJunction(), 6, false, RoundaboutExpander.getMaxGap(6));
+    }
+
+    @Benchmark
+    public List<Command> makeRoundaboutWithFlares() {
+        commands.clear();
+        Node node = nextJunction();
+        expander.runAsOneCommand(node.getDataSet(), "bench", () -> {
+            Way way = expander.makeRoundabout(node, 6, false, RoundaboutExpander.getMaxGap(6));
+            return expander.makeFlares(RoundaboutExpander.findFlareCandidates(way));
+        });
+        return commands;
+    }
+
+    @Benchmark
+    public double radiusWithClearance() {
+        return Clearance.getRadius(nextJunction(), 6);
+    }
+}
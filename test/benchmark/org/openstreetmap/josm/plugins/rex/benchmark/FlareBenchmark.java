@@ -0,0 +1,80 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.SyntheticJunctions;
+
+/**
+ * Making flares on existing roundabouts, from small rings to large ones
+ * with many approaches.
+ * <p>
+ * As in {@link ExpansionBenchmark}, the commands are only caught and the
+ * data set is rolled back after each invocation.
+ *
+ * @author Gorm
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlareBenchmark {
+
+    /**
+     * Ring nodes and approaches, as "nodes:approaches"
+     */
+    @Param({"16:4", "64:12", "256:48"})
+    String ring;
+
+    private final List<Command> commands = new ArrayList<>();
+    private final RoundaboutExpander expander = new RoundaboutExpander(commands::add);
+    private List<Way> roundabouts;
+    private int next;
+
+    @Setup
+    public void setup() {
+        JosmSetup.init();
+        String[] parts = ring.split(":");
+        int ringNodes = Integer.parseInt(parts[0]);
+        DataSet ds = SyntheticJunctions.roundabouts(64, ringNodes / 2d, ringNodes, Integer.parseInt(parts[1]), 1);
+        roundabouts = SyntheticJunctions.roundabouts(ds);
+    }
+
+    private Way nextRoundabout() {
+        Way way = roundabouts.get(next);
+        next = (next + 1) % roundabouts.size();
+        return way;
+    }
+
+    @Benchmark
+    public List<Node> findFlareCandidates() {
+        return RoundaboutExpander.findFlareCandidates(nextRoundabout());
+    }
+
+    @Benchmark
+    public List<Way> makeFlaresOnRoundabout() {
+        commands.clear();
+        return expander.makeFlaresOnRoundabouts(Collections.singletonList(nextRoundabout()));
+    }
+}
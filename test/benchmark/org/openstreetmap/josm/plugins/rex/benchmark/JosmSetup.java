@@ -0,0 +1,35 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.benchmark;
+
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.data.projection.Projections;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.MemoryPreferences;
+
+/**
+ * The little of JOSM the benchmarks need.
+ * <p>
+ * The preferences are kept in memory only, starting from the defaults,
+ * so what the benchmarks set never reaches the preferences of a real JOSM.
+ *
+ * @author Gorm
+ */
+final class JosmSetup {
+
+    private static boolean done;
+
+    private JosmSetup() {
+        // Hide default constructor
+    }
+
+    /**
+     * Set up in memory preferences and the projection, once per JVM
+     */
+    static synchronized void init() {
+        if (!done) {
+            Config.setPreferencesInstance(new MemoryPreferences());
+            ProjectionRegistry.setProjection(Projections.getProjectionByCode("EPSG:3857"));
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander.HighComp;
+import org.openstreetmap.josm.plugins.rex.SyntheticJunctions;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * The small steps done for every junction: sorting nodes by bearing,
+ * ranking the ways and moving way ends.
+ *
+ * @author Gorm
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+    @Param({"3", "4", "6", "12"})
+    int arms;
+
+    private final List<Command> commands = new ArrayList<>();
+    private final RoundaboutExpander expander = new RoundaboutExpander(commands::add);
+    private Node junction;
+    private List<Node> ends;
+    private List<Way> ways;
+    private LocalFrame frame;
+
+    @Setup
+    public void setup() {
+        JosmSetup.init();
+        DataSet ds = SyntheticJunctions.junctions(1, arms, 1);
+        junction = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        ways = new ArrayList<>(Utils.filteredCollection(junction.getReferrers(), Way.class));
+        ends = new ArrayList<>();
+        for (Way way : ways) {
+            ends.add(way.getNode(1));
+        }
+        frame = new LocalFrame(junction);
+    }
+
+    @Benchmark
+    public List<Node> angularSort() {
+        RoundaboutExpander.angularSort(ends, junction, true);
+        return ends;
+    }
+
+    @Benchmark
+    public List<Way> highComp() {
+        ways.sort(new HighComp(junction));
+        return ways;
+    }
+
+    /**
+     * The geometry of moving a way end, what used to be moveHeadingDistance
+     */
+    @Benchmark
+    public LatLon towards() {
+        return frame.towards(junction, ends.get(0), 6);
+    }
+
+    /**
+     * Moving a way end, including making the command
+     */
+    @Benchmark
+    public List<Command> moveWayEndNodeTowardsNextNode() {
+        commands.clear();
+        expander.moveWayEndNodeTowardsNextNode(junction, 6, ways.get(0));
+        return commands;
+    }
+}
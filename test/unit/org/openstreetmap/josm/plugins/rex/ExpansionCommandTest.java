@@ -0,0 +1,54 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test of {@link ExpansionCommand}
+ *
+ * @author Gorm
+ */
+@BasicPreferences
+@Projection
+class ExpansionCommandTest {
+
+    /**
+     * Making the command leaves the data as it is, executing it expands, undo and redo work
+     */
+    @Test
+    void testExecuteUndoRedo() {
+        DataSet ds = SyntheticJunctions.junctions(4, 4, 9);
+        List<Node> nodes = SyntheticJunctions.miniRoundabouts(ds);
+        int nodeCount = ds.getNodes().size();
+        int wayCount = ds.getWays().size();
+
+        List<JunctionPlan> plans = RoundaboutExpander.planAll(ds, nodes,
+                new ExpansionParameters(20, false, 0.3, 48, false), NullProgressMonitor.INSTANCE);
+        ExpansionCommand command = new ExpansionCommand(ds, plans);
+        assertEquals(nodeCount, ds.getNodes().size());
+        assertEquals(wayCount, ds.getWays().size());
+        assertEquals(4, command.getParticipatingPrimitives().size());
+
+        assertTrue(command.executeCommand());
+        assertEquals(4, SyntheticJunctions.roundabouts(ds).size());
+        assertTrue(SyntheticJunctions.miniRoundabouts(ds).isEmpty());
+
+        command.undoCommand();
+        assertEquals(nodeCount, ds.getNodes().size());
+        assertEquals(wayCount, ds.getWays().size());
+        assertEquals(4, SyntheticJunctions.miniRoundabouts(ds).size());
+
+        assertTrue(command.executeCommand());
+        assertEquals(4, SyntheticJunctions.roundabouts(ds).size());
+    }
+}
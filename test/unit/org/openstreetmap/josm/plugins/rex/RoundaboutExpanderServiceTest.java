@@ -0,0 +1,60 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test of {@link RoundaboutExpanderService}
+ *
+ * @author Gorm
+ */
+@BasicPreferences
+@Projection
+class RoundaboutExpanderServiceTest {
+
+    /**
+     * The resize command is named after the roundabouts it resized, not the ones it was given
+     */
+    @Test
+    void testResizeNamedAfterResized() {
+        DataSet ds = SyntheticJunctions.roundabouts(2, 15, 16, 4, 12);
+        List<Way> roundabouts = new ArrayList<>(SyntheticJunctions.roundabouts(ds));
+        //One from another data set is skipped
+        roundabouts.addAll(SyntheticJunctions.roundabouts(SyntheticJunctions.roundabouts(1, 15, 16, 4, 13)));
+
+        Command command = new RoundaboutExpanderService().resize(ds, roundabouts, 40,
+                new ExpansionParameters(0, false, 0.3, 48, false));
+        assertEquals("Resize 2 roundabouts", command.getDescriptionText());
+    }
+
+    /**
+     * Nodes are tagged with the diameter of the parameters, or from the preferences if it has none
+     */
+    @Test
+    void testTagDiameter() {
+        DataSet ds = SyntheticJunctions.junctions(1, 4, 14);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        node.remove("diameter");
+        RoundaboutExpanderService service = new RoundaboutExpanderService();
+
+        Command command = service.tag(ds, Collections.singleton(node), new ExpansionParameters(20, false, 0.3, 48, false));
+        command.executeCommand();
+        assertEquals("20", node.get("diameter"));
+        command.undoCommand();
+
+        service.tag(ds, Collections.singleton(node), new ExpansionParameters(0, false, 0.3, 48, false)).executeCommand();
+        assertEquals("12", node.get("diameter"));
+    }
+}
@@ -0,0 +1,489 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.plugins.rex.RoundaboutExpander.HighComp;
+import org.openstreetmap.josm.plugins.rex.geometry.CircleFit;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.testutils.annotations.Projection;
+
+/**
+ * Test of {@link RoundaboutExpander}, on made up junctions
+ *
+ * @author Gorm
+ */
+@BasicPreferences
+@Projection
+class RoundaboutExpanderTest {
+
+    private static final double RADIUS = 12;
+
+    /**
+     * Parameters with a fixed size and direction, not from the preferences
+     */
+    private static ExpansionParameters params(boolean leftHandTraffic, boolean flares) {
+        return new ExpansionParameters(RADIUS * 2, leftHandTraffic, 0.3, 48, flares);
+    }
+
+    /**
+     * Expanding a junction hands one command to the sink and leaves the data as it was
+     */
+    @Test
+    void testOneCommandPerJunction() {
+        DataSet ds = SyntheticJunctions.junctions(1, 4, 1);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        int nodes = ds.getNodes().size();
+        int ways = ds.getWays().size();
+
+        List<Command> commands = new ArrayList<>();
+        Way ring = new RoundaboutExpander(commands::add)
+                .makeRoundabout(node, RADIUS, false, params(false, false).getMaxGap(RADIUS));
+        assertEquals(1, commands.size());
+        assertEquals(nodes, ds.getNodes().size());
+        assertEquals(ways, ds.getWays().size());
+        assertTrue(RoundaboutExpander.isMiniRoundabout(node));
+
+        commands.get(0).executeCommand();
+        assertTrue(ring.isUsable());
+        assertTrue(RoundaboutIndex.isRoundabout(ring));
+        assertFalse(RoundaboutExpander.isMiniRoundabout(node));
+
+        //Undo gives back the junction
+        commands.get(0).undoCommand();
+        assertEquals(nodes, ds.getNodes().size());
+        assertEquals(ways, ds.getWays().size());
+        assertTrue(RoundaboutExpander.isMiniRoundabout(node));
+    }
+
+    /**
+     * The diameter tag is the largest size, it is still made smaller to keep clear
+     */
+    @Test
+    void testDiameterTagIsUpperBound() {
+        DataSet ds = SyntheticJunctions.junctions(1, 4, 8);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        node.put("diameter", "30");
+        Node building = new Node(new LocalFrame(node).atBearing(0.4, 8));
+        building.put("building", "yes");
+        ds.addPrimitive(building);
+        assertTrue(RoundaboutExpander.getRadius(node) < 8);
+
+        node.put("diameter", "6");
+        assertEquals(3, RoundaboutExpander.getRadius(node), 1e-9);
+    }
+
+    /**
+     * Tagged nodes on the ways through the junction do not make it smaller
+     */
+    @Test
+    void testClearanceSkipsNodesOnArms() {
+        DataSet ds = SyntheticJunctions.junctions(1, 4, 8);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        node.put("diameter", "30");
+        Way arm = node.referrers(Way.class).findFirst().get();
+        Node giveWay = new Node(new LocalFrame(node).towards(node, arm.getNode(1), 5));
+        giveWay.put("highway", "give_way");
+        ds.addPrimitive(giveWay);
+        arm.addNode(1, giveWay);
+        assertEquals(15, RoundaboutExpander.getRadius(node), 1e-9);
+
+        //The same node off the arm is in the way
+        arm.removeNode(giveWay);
+        assertTrue(RoundaboutExpander.getRadius(node) < 5);
+    }
+
+    /**
+     * Expanding many junctions is still one command
+     */
+    @Test
+    void testExpandAllIsOneCommand() {
+        DataSet ds = SyntheticJunctions.junctions(25, 5, 2);
+        List<Command> commands = new ArrayList<>();
+        List<Way> rings = new RoundaboutExpander(commands::add).expandAll(ds, SyntheticJunctions.miniRoundabouts(ds),
+                params(false, true), NullProgressMonitor.INSTANCE);
+        assertEquals(1, commands.size());
+        assertEquals(25, rings.size());
+
+        commands.get(0).executeCommand();
+        assertEquals(25, SyntheticJunctions.roundabouts(ds).size());
+        assertTrue(SyntheticJunctions.miniRoundabouts(ds).isEmpty());
+    }
+
+    /**
+     * Rings of random junctions are round, go the right way and do not cross themselves
+     */
+    @Test
+    void testRingInvariants() {
+        for (int seed = 0; seed < 40; seed++) {
+            boolean lht = seed % 2 == 0;
+            int arms = 3 + seed % 7;
+            DataSet ds = SyntheticJunctions.junctions(1, arms, seed);
+            Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+            LatLon center = node.getCoor();
+            double maxGap = params(lht, false).getMaxGap(RADIUS);
+
+            Way ring = new RoundaboutExpander(Command::executeCommand).makeRoundabout(node, RADIUS, lht, maxGap);
+            assertRing(ring, center, RADIUS, lht, maxGap, "seed " + seed);
+            assertTrue(ring.getNodesCount() - 1 >= arms, "seed " + seed);
+        }
+    }
+
+    /**
+     * A junction changed after it was planned is expanded from the data as it is
+     */
+    @Test
+    void testStalePlan() {
+        DataSet ds = SyntheticJunctions.junctions(1, 4, 7);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        LatLon center = node.getCoor();
+        List<JunctionPlan> plans = RoundaboutExpander.planAll(ds, Collections.singletonList(node),
+                params(false, false), NullProgressMonitor.INSTANCE);
+        assertEquals(1, plans.size());
+        JunctionPlan plan = plans.get(0);
+
+        //Move the next node of an arm after planning
+        LocalFrame frame = new LocalFrame(center);
+        Way arm = node.referrers(Way.class).findFirst().get();
+        Node next = arm.getNode(1);
+        next.setCoor(frame.atBearing(frame.bearing(next) + 0.3, 30));
+
+        List<Way> rings = new RoundaboutExpander(Command::executeCommand).expandAll(ds, plans, false);
+        assertEquals(1, rings.size());
+        assertRing(rings.get(0), center, plan.getRadius(), plan.leftHandTraffic, plan.maxGap, "stale plan");
+        //The end of the arm is towards where its next node is now
+        assertEquals(frame.bearing(next), frame.bearing(arm.firstNode()), 1e-6);
+    }
+
+    /**
+     * Each candidate gets one flare, and flares are not made again
+     */
+    @Test
+    void testFlaresOnce() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 15, 16, 4, 3);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        List<Node> candidates = RoundaboutExpander.findFlareCandidates(roundabout);
+        assertEquals(4, candidates.size());
+        assertEquals(4, new HashSet<>(candidates).size());
+
+        List<Command> commands = new ArrayList<>();
+        RoundaboutExpander expander = new RoundaboutExpander(commands::add);
+        assertEquals(1, expander.makeFlaresOnRoundabouts(Collections.singletonList(roundabout)).size());
+        assertEquals(1, commands.size());
+        commands.get(0).executeCommand();
+
+        int ways = ds.getWays().size();
+        expander.makeFlaresOnRoundabouts(Collections.singletonList(roundabout));
+        assertEquals(1, commands.size());
+        assertEquals(ways, ds.getWays().size());
+    }
+
+    /**
+     * A flare is one command: the approach is moved back from the ring, and
+     * two oneway ways join its new end to the ring node and the node before it
+     */
+    @Test
+    void testFlareGeometry() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 15, 16, 1, 9);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        Node cNode = RoundaboutExpander.findFlareCandidates(roundabout).get(0);
+        Way approach = cNode.referrers(Way.class).filter(w -> w != roundabout).findFirst().get();
+        String highway = approach.get("highway");
+        int ways = ds.getWays().size();
+
+        List<Command> commands = new ArrayList<>();
+        assertEquals(roundabout, new RoundaboutExpander(commands::add).makeFlares(Collections.singletonList(cNode)));
+        assertEquals(1, commands.size());
+        assertEquals(ways, ds.getWays().size());
+        commands.get(0).executeCommand();
+
+        List<Way> flares = new ArrayList<>();
+        for (Way way : ds.getWays()) {
+            if ("roundabout_flare".equals(way.get("oneway_type"))) {
+                flares.add(way);
+            }
+        }
+        assertEquals(2, flares.size());
+        Way in = flares.get(0).lastNode() == cNode ? flares.get(0) : flares.get(1);
+        Way out = flares.get(0) == in ? flares.get(1) : flares.get(0);
+        Node split = in.firstNode();
+        assertEquals(cNode, in.lastNode());
+        assertEquals(split, out.lastNode());
+        assertTrue(roundabout.getNeighbours(cNode).contains(out.firstNode()));
+        for (Way flare : flares) {
+            assertEquals(2, flare.getNodesCount());
+            assertEquals("yes", flare.get("oneway"));
+            assertEquals(highway, flare.get("highway"));
+        }
+        //The approach now ends where the flare splits, 6 m from the ring
+        assertFalse(approach.containsNode(cNode));
+        assertTrue(approach.isFirstLastNode(split));
+        assertEquals(6, split.greatCircleDistance(cNode), 0.05);
+    }
+
+    /**
+     * Resizing gives a ring of the new size
+     */
+    @Test
+    void testResize() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 15, 16, 4, 4);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        RoundaboutExpander expander = new RoundaboutExpander(Command::executeCommand);
+        assertTrue(expander.resizeRoundabout(roundabout, 25, params(false, false).getMaxGap(25)));
+        assertEquals(25, RoundaboutExpander.getRadius(roundabout), 0.1);
+    }
+
+    /**
+     * A ring that is a bit off is made round, without adding or removing nodes
+     */
+    @Test
+    void testCircularize() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 15, 16, 4, 5);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        Random rnd = new Random(5);
+        LocalFrame frame = new LocalFrame(roundabout.firstNode());
+        for (int i = 0; i < 16; i += 3) {
+            Node n = roundabout.getNode(i);
+            n.setCoor(frame.toLatLon(frame.x(n) + rnd.nextDouble() - 0.5, frame.y(n) + rnd.nextDouble() - 0.5));
+        }
+        int nodes = roundabout.getNodesCount();
+
+        //Loose enough that no nodes are needed
+        ExpansionParameters params = new ExpansionParameters(0, null, 1, 48, false);
+        List<Way> done = new RoundaboutExpander(Command::executeCommand)
+                .circularize(Collections.singletonList(roundabout), params);
+        assertEquals(Collections.singletonList(roundabout), done);
+        assertEquals(nodes, roundabout.getNodesCount());
+        assertTrue(fit(roundabout).rms < 0.01);
+    }
+
+    /**
+     * A ring far from a circle is left as it is, and reported
+     */
+    @Test
+    void testCircularizeSkipsOval() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 15, 16, 0, 7);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        LocalFrame frame = new LocalFrame(roundabout.firstNode());
+        LatLon center = frame.atBearing(Math.PI, 15);
+        LocalFrame centered = new LocalFrame(center);
+        for (Node n : roundabout.getNodes().subList(0, 16)) {
+            n.setCoor(centered.toLatLon(centered.x(n) * 1.6, centered.y(n)));
+        }
+        assertCircularizeSkips(roundabout);
+    }
+
+    /**
+     * A ring where a node would move far is left as it is, and reported
+     */
+    @Test
+    void testCircularizeSkipsLongMove() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 100, 48, 0, 8);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        //Out from the center, which is south of the first node
+        Node n = roundabout.getNode(24);
+        LocalFrame frame = new LocalFrame(n);
+        n.setCoor(frame.toLatLon(0, -8));
+        assertCircularizeSkips(roundabout);
+    }
+
+    private static void assertCircularizeSkips(Way roundabout) {
+        List<LatLon> before = new ArrayList<>();
+        roundabout.getNodes().forEach(n -> before.add(n.getCoor()));
+        List<String> warnings = new ArrayList<>();
+        RoundaboutExpander expander = new RoundaboutExpander(Command::executeCommand) {
+            @Override
+            protected void warn(String message) {
+                warnings.add(message);
+            }
+        };
+        assertTrue(expander.circularize(Collections.singletonList(roundabout)).isEmpty());
+        assertEquals(1, warnings.size());
+        List<LatLon> after = new ArrayList<>();
+        roundabout.getNodes().forEach(n -> after.add(n.getCoor()));
+        assertEquals(before, after);
+    }
+
+    /**
+     * A ring with too few nodes for its size gets filler nodes
+     */
+    @Test
+    void testCircularizeAddsFillers() {
+        DataSet ds = SyntheticJunctions.roundabouts(1, 30, 6, 3, 6);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        ExpansionParameters params = params(false, false);
+        RoundaboutExpanderService service = new RoundaboutExpanderService();
+        Command command = service.circularize(ds, Collections.singletonList(roundabout), params);
+        assertEquals(7, roundabout.getNodesCount());
+
+        command.executeCommand();
+        CircleFit fit = fit(roundabout);
+        assertTrue(roundabout.getNodesCount() > 7);
+        assertTrue(fit.rms < 0.01);
+        assertRing(roundabout, new LocalFrame(roundabout.firstNode()).toLatLon(fit.cx, fit.cy), fit.r, false,
+                params.getMaxGap(fit.r), "filled ring");
+    }
+
+    /**
+     * Comparing ways by rank does not allocate once the ranks are known
+     */
+    @Test
+    void testHighCompDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        DataSet ds = SyntheticJunctions.junctions(1, 6, 6);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        Way[] ways = node.referrers(Way.class).toArray(Way[]::new);
+        HighComp comp = new HighComp(node);
+        //Warm up, so the ranks are known and it is the compiled code that is measured
+        compareAll(comp, ways, 20_000);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        compareAll(comp, ways, 100_000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        //Allow for the measuring itself
+        assertTrue(allocated < 10_000, allocated + " bytes allocated");
+    }
+
+    /**
+     * Making a roundabout allocates for the junction, not for the data set around it.
+     * The budget is well above what it takes, it is there to catch a change that
+     * copies or scans the data for each junction.
+     */
+    @Test
+    void testMakeRoundaboutAllocationBudget() {
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        DataSet ds = SyntheticJunctions.junctions(400, 4, 10);
+        Node node = SyntheticJunctions.miniRoundabouts(ds).get(0);
+        double maxGap = params(false, false).getMaxGap(RADIUS);
+        int nodes = ds.getNodes().size();
+        //Warm up, so it is the compiled code that is measured
+        makeRoundabouts(node, maxGap, 200);
+        int times = 500;
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        makeRoundabouts(node, maxGap, times);
+        long perJunction = (threads.getThreadAllocatedBytes(thread) - before) / times;
+        assertTrue(perJunction < 256_000, perJunction + " bytes allocated per junction");
+        //Each command was rolled back
+        assertEquals(nodes, ds.getNodes().size());
+    }
+
+    private static void makeRoundabouts(Node node, double maxGap, int times) {
+        List<Command> commands = new ArrayList<>(1);
+        for (int t = 0; t < times; t++) {
+            new RoundaboutExpander(commands::add).makeRoundabout(node, RADIUS, false, maxGap);
+            commands.clear();
+        }
+    }
+
+    /**
+     * Making flares allocates for the roundabout, not for the data set around it
+     */
+    @Test
+    void testMakeFlaresAllocationBudget() {
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        DataSet ds = SyntheticJunctions.roundabouts(400, 15, 16, 4, 11);
+        Way roundabout = SyntheticJunctions.roundabouts(ds).get(0);
+        List<Node> candidates = RoundaboutExpander.findFlareCandidates(roundabout);
+        int ways = ds.getWays().size();
+        makeFlares(candidates, 200);
+        int times = 500;
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        makeFlares(candidates, times);
+        long perJunction = (threads.getThreadAllocatedBytes(thread) - before) / times;
+        assertTrue(perJunction < 256_000, perJunction + " bytes allocated per junction");
+        assertEquals(ways, ds.getWays().size());
+    }
+
+    private static void makeFlares(List<Node> candidates, int times) {
+        List<Command> commands = new ArrayList<>(1);
+        for (int t = 0; t < times; t++) {
+            new RoundaboutExpander(commands::add).makeFlares(candidates);
+            commands.clear();
+        }
+    }
+
+    /**
+     * @return the bean to measure allocations with, the test is skipped if there is none
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static int compareAll(HighComp comp, Way[] ways, int times) {
+        int sum = 0;
+        for (int t = 0; t < times; t++) {
+            sum += comp.compare(ways[t % ways.length], ways[(t + 1) % ways.length]);
+        }
+        return sum;
+    }
+
+    /**
+     * Check that ring is closed, its nodes are radius from center, each step
+     * turns the same way and no more than maxGap, and it goes round once
+     */
+    private static void assertRing(Way ring, LatLon center, double radius, boolean lht, double maxGap, String what) {
+        assertTrue(ring.isClosed(), what);
+        assertTrue(RoundaboutIndex.isRoundabout(ring), what);
+        LocalFrame frame = new LocalFrame(center);
+        double turned = 0;
+        for (int i = 0; i + 1 < ring.getNodesCount(); i++) {
+            Node a = ring.getNode(i);
+            Node b = ring.getNode(i + 1);
+            assertEquals(radius, Math.hypot(frame.x(a), frame.y(a)), 0.05, what);
+            double step = frame.bearing(b) - frame.bearing(a);
+            if (step > Math.PI) {
+                step -= Math.PI * 2;
+            } else if (step <= -Math.PI) {
+                step += Math.PI * 2;
+            }
+            //Clockwise is increasing bearing
+            assertTrue(lht ? step > 0 : step < 0, what + ": step " + i + " goes the wrong way");
+            assertTrue(Math.abs(step) <= maxGap + 1e-6, what + ": gap " + i + " is too large");
+            turned += step;
+        }
+        //Once around, not a figure of eight
+        assertEquals(lht ? Math.PI * 2 : -Math.PI * 2, turned, 1e-6, what);
+    }
+
+    private static CircleFit fit(Way ring) {
+        LocalFrame frame = new LocalFrame(ring.firstNode());
+        int s = ring.getNodesCount() - 1;
+        double[] x = new double[s];
+        double[] y = new double[s];
+        for (int i = 0; i < s; i++) {
+            x[i] = frame.x(ring.getNode(i));
+            y[i] = frame.y(ring.getNode(i));
+        }
+        return CircleFit.fit(x, y, s);
+    }
+}
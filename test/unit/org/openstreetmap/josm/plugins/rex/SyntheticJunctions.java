@@ -0,0 +1,181 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.geometry.LocalFrame;
+
+/**
+ * Makes data sets with made up junctions, for tests and benchmarks.
+ * <p>
+ * The same seed always gives the same data.
+ *
+ * @author Gorm
+ */
+public final class SyntheticJunctions {
+
+    /**
+     * Highway classes the arms are picked from
+     */
+    private static final String[] HIGHWAYS = {"primary", "secondary", "tertiary", "residential", "service"};
+
+    /**
+     * Distance between junctions in meter, far enough that they do not meet
+     */
+    private static final double SPACING = 400;
+
+    /**
+     * Where the junctions are laid out from
+     */
+    private static final LatLon ORIGIN = new LatLon(60, 10);
+
+    private SyntheticJunctions() {
+        // Hide default constructor
+    }
+
+    /**
+     * Make a data set with junctions laid out in a grid
+     * @param count number of junctions
+     * @param arms  number of ways meeting at each junction
+     * @param seed  seed for the arm directions and classes
+     * @return the data set, get the junctions with {@link #miniRoundabouts(DataSet)}
+     */
+    public static DataSet junctions(int count, int arms, long seed) {
+        DataSet ds = new DataSet();
+        Random rnd = new Random(seed);
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        int side = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            junction(ds, frame.toLatLon(i % side * SPACING, i / side * SPACING), arms, rnd);
+        }
+        return ds;
+    }
+
+    /**
+     * Make one junction, a node tagged highway=mini_roundabout with ways out from it.
+     * <p>
+     * The arms are spread around the node, with some jitter, and have two or three nodes.
+     * @param ds     data set to add to
+     * @param center where the junction is
+     * @param arms   number of ways meeting at the junction
+     * @param rnd    source of the jitter
+     * @return the junction node
+     */
+    public static Node junction(DataSet ds, LatLon center, int arms, Random rnd) {
+        LocalFrame frame = new LocalFrame(center);
+        Node node = new Node(center);
+        node.put("highway", "mini_roundabout");
+        ds.addPrimitive(node);
+        double step = Math.PI * 2 / arms;
+        for (int i = 0; i < arms; i++) {
+            double bearing = i * step + (rnd.nextDouble() - 0.5) * step / 2;
+            Way way = new Way();
+            way.addNode(node);
+            int nodes = 1 + rnd.nextInt(2);
+            for (int j = 1; j <= nodes; j++) {
+                Node n = new Node(frame.atBearing(bearing, 40d * j + rnd.nextDouble() * 20));
+                ds.addPrimitive(n);
+                way.addNode(n);
+            }
+            way.put("highway", HIGHWAYS[rnd.nextInt(HIGHWAYS.length)]);
+            ds.addPrimitive(way);
+        }
+        return node;
+    }
+
+    /**
+     * Make a roundabout way with ways ending on it
+     * @param ds         data set to add to
+     * @param center     center of the ring
+     * @param radius     radius in meter
+     * @param ringNodes  number of nodes in the ring
+     * @param approaches number of ways ending on the ring, at most ringNodes
+     * @param rnd        source of the approach classes
+     * @return the roundabout way, counter clockwise
+     */
+    public static Way roundabout(DataSet ds, LatLon center, double radius, int ringNodes, int approaches, Random rnd) {
+        LocalFrame frame = new LocalFrame(center);
+        List<Node> ring = new ArrayList<>(ringNodes + 1);
+        for (int i = 0; i < ringNodes; i++) {
+            //Counter clockwise is decreasing bearing
+            Node n = new Node(frame.atBearing(-Math.PI * 2 * i / ringNodes, radius));
+            ds.addPrimitive(n);
+            ring.add(n);
+        }
+        ring.add(ring.get(0));
+        Way roundabout = new Way();
+        roundabout.setNodes(ring);
+        roundabout.put("highway", "primary");
+        roundabout.put("junction", "roundabout");
+        ds.addPrimitive(roundabout);
+
+        for (int i = 0; i < approaches; i++) {
+            Node end = ring.get(i * ringNodes / approaches);
+            double bearing = frame.bearing(end);
+            Node outer = new Node(frame.atBearing(bearing, radius + 50));
+            ds.addPrimitive(outer);
+            Way approach = new Way();
+            approach.addNode(outer);
+            approach.addNode(end);
+            approach.put("highway", HIGHWAYS[rnd.nextInt(HIGHWAYS.length)]);
+            ds.addPrimitive(approach);
+        }
+        return roundabout;
+    }
+
+    /**
+     * Make a data set with roundabouts laid out in a grid
+     * @param count      number of roundabouts
+     * @param radius     radius in meter
+     * @param ringNodes  number of nodes in each ring
+     * @param approaches number of ways ending on each ring
+     * @param seed       seed for the approach classes
+     * @return the data set
+     */
+    public static DataSet roundabouts(int count, double radius, int ringNodes, int approaches, long seed) {
+        DataSet ds = new DataSet();
+        Random rnd = new Random(seed);
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        int side = (int) Math.ceil(Math.sqrt(count));
+        for (int i = 0; i < count; i++) {
+            roundabout(ds, frame.toLatLon(i % side * SPACING, i / side * SPACING), radius, ringNodes, approaches, rnd);
+        }
+        return ds;
+    }
+
+    /**
+     * @param ds data set
+     * @return the mini roundabout nodes in ds, in the order they were made
+     */
+    public static List<Node> miniRoundabouts(DataSet ds) {
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : ds.getNodes()) {
+            if (RoundaboutExpander.isMiniRoundabout(node)) {
+                nodes.add(node);
+            }
+        }
+        nodes.sort((a, b) -> Long.compare(b.getUniqueId(), a.getUniqueId()));
+        return nodes;
+    }
+
+    /**
+     * @param ds data set
+     * @return the junction=roundabout ways in ds, in the order they were made
+     */
+    public static List<Way> roundabouts(DataSet ds) {
+        List<Way> ways = new ArrayList<>();
+        for (Way way : ds.getWays()) {
+            if (RoundaboutIndex.isRoundabout(way)) {
+                ways.add(way);
+            }
+        }
+        ways.sort((a, b) -> Long.compare(b.getUniqueId(), a.getUniqueId()));
+        return ways;
+    }
+}
@@ -0,0 +1,60 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.actions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.plugins.rex.actions.SelectionClassifier.Step;
+
+/**
+ * Test of {@link SelectionClassifier}
+ *
+ * @author Gorm
+ */
+class SelectionClassifierTest {
+
+    private static Node mini() {
+        Node node = new Node(new LatLon(60, 10));
+        node.put("highway", "mini_roundabout");
+        return node;
+    }
+
+    private static Way roundabout() {
+        Node a = new Node(new LatLon(60, 10));
+        Way way = new Way();
+        way.setNodes(Arrays.asList(a, new Node(new LatLon(60.0001, 10)), new Node(new LatLon(60, 10.0001)), a));
+        way.put("highway", "primary");
+        way.put("junction", "roundabout");
+        return way;
+    }
+
+    /**
+     * One element decides by what it is
+     */
+    @Test
+    void testSingle() {
+        assertEquals(Step.NONE, SelectionClassifier.classify(Collections.emptyList()));
+        assertEquals(Step.EXPAND, SelectionClassifier.classify(Collections.singletonList(mini())));
+        assertEquals(Step.TAG_NODE, SelectionClassifier.classify(Collections.singletonList(new Node(new LatLon(60, 10)))));
+        assertEquals(Step.TAG_WAY, SelectionClassifier.classify(Collections.singletonList(roundabout())));
+        assertEquals(Step.NONE, SelectionClassifier.classify(Collections.singletonList(new Relation())));
+    }
+
+    /**
+     * Relations and other ways before the deciding element are passed over
+     */
+    @Test
+    void testSeveral() {
+        assertEquals(Step.EXPAND_ALL, SelectionClassifier.classify(Arrays.asList(new Relation(), new Way(), mini())));
+        assertEquals(Step.FLARES, SelectionClassifier.classify(Arrays.asList(new Way(), new Node(new LatLon(60, 10)))));
+        assertEquals(Step.FLARES_ALL, SelectionClassifier.classify(Arrays.asList(new Relation(), new Way(), roundabout())));
+        assertEquals(Step.NONE, SelectionClassifier.classify(Arrays.asList(new Relation(), new Way())));
+    }
+}
@@ -0,0 +1,74 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.geometry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of {@link ChordSpacing}
+ *
+ * @author Gorm
+ */
+class ChordSpacingTest {
+
+    /**
+     * The segments keep within the max error of the arc
+     */
+    @Test
+    void testMaxGapKeepsError() {
+        for (double radius : new double[] {3, 10, 25, 60, 150}) {
+            double gap = ChordSpacing.maxGap(radius, 0.5, 0);
+            double error = radius * (1 - Math.cos(gap / 2));
+            assertTrue(error <= 0.5 + 1e-9, "error " + error + " at radius " + radius);
+        }
+    }
+
+    /**
+     * Larger circles get smaller gaps, so more nodes
+     */
+    @Test
+    void testMaxGapShrinksWithRadius() {
+        double small = ChordSpacing.maxGap(10, 0.5, 0);
+        double large = ChordSpacing.maxGap(100, 0.5, 0);
+        assertTrue(large < small);
+    }
+
+    /**
+     * The gap is at most PI / 2, and never so small that more than maxNodes are needed
+     */
+    @Test
+    void testMaxGapLimits() {
+        assertEquals(Math.PI / 2, ChordSpacing.maxGap(1, 5, 0), 1e-12);
+        assertEquals(Math.PI * 2 / 32, ChordSpacing.maxGap(10_000, 0.1, 32), 1e-12);
+    }
+
+    /**
+     * An upper bound on the angle only ever makes the gap smaller, 0 means no bound
+     */
+    @Test
+    void testMaxGapUpperBound() {
+        double gap = ChordSpacing.maxGap(10, 0.5, 48);
+        assertEquals(gap, ChordSpacing.maxGap(10, 0.5, 48, 0), 1e-12);
+        assertEquals(gap, ChordSpacing.maxGap(10, 0.5, 48, Math.PI / 2), 1e-12);
+        assertEquals(Math.toRadians(10), ChordSpacing.maxGap(10, 0.5, 48, Math.toRadians(10)), 1e-12);
+    }
+
+    /**
+     * Enough fillers are made that no gap is larger than maxGap, and no more
+     */
+    @Test
+    void testFillers() {
+        assertEquals(0, ChordSpacing.fillers(0.5, 1));
+        assertEquals(0, ChordSpacing.fillers(1, 1));
+        assertEquals(1, ChordSpacing.fillers(1.5, 1));
+        assertEquals(3, ChordSpacing.fillers(Math.PI * 2, Math.PI / 2));
+        for (double gap = 0.1; gap < Math.PI * 2; gap += 0.1) {
+            double maxGap = 0.3;
+            int n = ChordSpacing.fillers(gap, maxGap);
+            assertTrue(gap / (n + 1) <= maxGap + 1e-9);
+            assertTrue(n == 0 || gap / n > maxGap - 1e-9);
+        }
+    }
+}
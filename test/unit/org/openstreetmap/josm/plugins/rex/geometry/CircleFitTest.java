@@ -0,0 +1,84 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.geometry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test of {@link CircleFit}
+ *
+ * @author Gorm
+ */
+class CircleFitTest {
+
+    /**
+     * Points on a circle give back that circle, with no error
+     */
+    @Test
+    void testExactCircle() {
+        int n = 12;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = 30 + 8 * Math.cos(Math.PI * 2 * i / n);
+            y[i] = -20 + 8 * Math.sin(Math.PI * 2 * i / n);
+        }
+        CircleFit fit = CircleFit.fit(x, y, n);
+        assertNotNull(fit);
+        assertEquals(30, fit.cx, 1e-9);
+        assertEquals(-20, fit.cy, 1e-9);
+        assertEquals(8, fit.r, 1e-9);
+        assertEquals(0, fit.rms, 1e-9);
+    }
+
+    /**
+     * Noise on the points shows in rms, not much in the circle
+     */
+    @Test
+    void testNoisyCircle() {
+        Random rnd = new Random(1);
+        int n = 200;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            double r = 50 + rnd.nextGaussian() * 0.5;
+            x[i] = r * Math.cos(Math.PI * 2 * i / n);
+            y[i] = r * Math.sin(Math.PI * 2 * i / n);
+        }
+        CircleFit fit = CircleFit.fit(x, y, n);
+        assertNotNull(fit);
+        assertEquals(0, fit.cx, 0.2);
+        assertEquals(0, fit.cy, 0.2);
+        assertEquals(50, fit.r, 0.2);
+        assertTrue(fit.rms > 0.3 && fit.rms < 0.7, "rms " + fit.rms);
+    }
+
+    /**
+     * Only the points in the range are used
+     */
+    @Test
+    void testRange() {
+        double[] x = {1000, 5, 0, -5, 0, 1000};
+        double[] y = {1000, 0, 5, 0, -5, -1000};
+        CircleFit fit = CircleFit.fit(x, y, 1, 5);
+        assertNotNull(fit);
+        assertEquals(0, fit.cx, 1e-9);
+        assertEquals(0, fit.cy, 1e-9);
+        assertEquals(5, fit.r, 1e-9);
+    }
+
+    /**
+     * Too few points, or points on a line, have no circle
+     */
+    @Test
+    void testNoCircle() {
+        assertNull(CircleFit.fit(new double[] {0, 1}, new double[] {0, 1}, 2));
+        assertNull(CircleFit.fit(new double[] {0, 1, 2, 3}, new double[] {0, 2, 4, 6}, 4));
+    }
+}
@@ -0,0 +1,167 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.plugins.rex.geometry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+
+/**
+ * Test of {@link LocalFrame}
+ *
+ * @author Gorm
+ */
+class LocalFrameTest {
+
+    private static final LatLon ORIGIN = new LatLon(60, 10);
+
+    /**
+     * Going to the plane and back gives the same position
+     */
+    @Test
+    void testRoundTrip() {
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        LatLon p = new LatLon(60.0003, 10.0007);
+        LatLon back = frame.toLatLon(frame.x(p), frame.y(p));
+        assertEquals(p.lat(), back.lat(), 1e-12);
+        assertEquals(p.lon(), back.lon(), 1e-12);
+    }
+
+    /**
+     * Distances in the plane agree with the distance on the sphere
+     */
+    @Test
+    void testDistance() {
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        for (int i = 0; i < 8; i++) {
+            LatLon p = frame.atBearing(Math.PI * i / 4, 50);
+            assertEquals(50, ORIGIN.greatCircleDistance(p), 0.05);
+        }
+    }
+
+    /**
+     * Bearings are from north, clockwise, in [0, 2PI), as LatLon has them
+     */
+    @Test
+    void testBearing() {
+        assertEquals(0, LocalFrame.bearing(0, 1), 1e-12);
+        assertEquals(Math.PI / 2, LocalFrame.bearing(1, 0), 1e-12);
+        assertEquals(Math.PI, LocalFrame.bearing(0, -1), 1e-12);
+        assertEquals(Math.PI * 3 / 2, LocalFrame.bearing(-1, 0), 1e-12);
+
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        for (int i = 0; i < 16; i++) {
+            double bearing = Math.PI * 2 * i / 16;
+            LatLon p = frame.atBearing(bearing, 30);
+            assertEquals(bearing, frame.bearing(p), 1e-9);
+            double diff = Math.abs(ORIGIN.bearing(p) - bearing);
+            assertTrue(Math.min(diff, Math.PI * 2 - diff) < 1e-3, "bearing " + bearing);
+        }
+    }
+
+    /**
+     * The point is distance from start, on the line to target
+     */
+    @Test
+    void testTowards() {
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        LatLon target = frame.toLatLon(30, 40);
+        LatLon p = frame.towards(ORIGIN, target, 10);
+        assertEquals(6, frame.x(p), 1e-9);
+        assertEquals(8, frame.y(p), 1e-9);
+        //No direction, go north
+        LatLon north = frame.towards(ORIGIN, ORIGIN, 10);
+        assertEquals(0, frame.x(north), 1e-9);
+        assertEquals(10, frame.y(north), 1e-9);
+    }
+
+    /**
+     * Items end up in the order of their keys
+     */
+    @Test
+    void testSortByKey() {
+        double[] keys = {3, 1, 2, 0.5, 1};
+        String[] items = {"d", "b", "c", "a", "b2"};
+        LocalFrame.sortByKey(keys, items);
+        assertArrayEquals(new double[] {0.5, 1, 1, 2, 3}, keys);
+        assertArrayEquals(new String[] {"a", "b", "b2", "c", "d"}, items);
+    }
+
+    /**
+     * Sorting does not allocate, it is done for every junction
+     */
+    @Test
+    void testSortByKeyDoesNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        int s = 12;
+        double[] keys = new double[s];
+        Integer[] items = new Integer[s];
+        Integer[] values = new Integer[s];
+        for (int i = 0; i < s; i++) {
+            values[i] = i;
+        }
+        //Warm up, so it is the compiled code that is measured
+        sortReversed(keys, items, values, 20_000);
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        sortReversed(keys, items, values, 100_000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        //Allow for the measuring itself
+        assertTrue(allocated < 10_000, allocated + " bytes allocated");
+    }
+
+    private static void sortReversed(double[] keys, Integer[] items, Integer[] values, int times) {
+        int s = keys.length;
+        for (int t = 0; t < times; t++) {
+            for (int i = 0; i < s; i++) {
+                keys[i] = s - i;
+                items[i] = values[s - 1 - i];
+            }
+            LocalFrame.sortByKey(keys, items);
+        }
+    }
+
+    /**
+     * Moving towards a point allocates only the position it returns, it is
+     * done for every arm of every junction
+     */
+    @Test
+    void testTowardsAllocatesOnlyResult() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        LocalFrame frame = new LocalFrame(ORIGIN);
+        LatLon target = new LatLon(60.0003, 10.0007);
+        //Warm up, so it is the compiled code that is measured
+        double sum = towards(frame, target, 20_000);
+        int times = 100_000;
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        sum += towards(frame, target, times);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(sum > 0);
+        //One small LatLon per call, and some for the measuring itself
+        assertTrue(allocated < times * 48L + 10_000, allocated + " bytes allocated");
+    }
+
+    private static double towards(LocalFrame frame, LatLon target, int times) {
+        double sum = 0;
+        for (int t = 0; t < times; t++) {
+            sum += frame.towards(ORIGIN, target, t % 10).lat();
+        }
+        return sum;
+    }
+}